@@ -0,0 +1,245 @@
+package bank;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Balances of many accounts, with transfers between any two of them from any
+ * number of threads.<br/>
+ *
+ * The balances are one <code>long[]</code> rather than an object per
+ * account, in blocks of 64 consecutive accounts. They are guarded by a fixed
+ * array of locks: account <code>id</code> belongs to stripe
+ * <code>(id / 64) % stripes</code>. Arrays are only 8-byte aligned, so a
+ * block may start anywhere in a cache line; a line of unused slots after each
+ * block keeps the lines written under one stripe apart from those of the
+ * next block, at a cost of 1/8 more memory.<br/>
+ *
+ * A transfer locks the stripes of both accounts, always the lower-numbered
+ * stripe first, as {@link BankOrdered} orders its two locks, so no two
+ * transfers can wait for each other in a cycle. If both accounts share a
+ * stripe, it is locked once. The locks themselves are padded, so
+ * that two stripes never share a cache line either.
+ *
+ * Usage: <code>java bank.Ledger [accounts] [threads] [seconds]</code> runs a
+ * benchmark with uniform and with skewed choices of accounts.
+ */
+
+public class Ledger {
+
+	/** The number of lock stripes, unless given. */
+	public static final int STRIPES = 1024;
+
+	// 8 longs = 64 bytes, one cache line
+	private static final int LINE_SHIFT = 3;
+	// 64 accounts per block, all in the same stripe
+	private static final int BLOCK_SHIFT = 6;
+
+	private final int accounts;
+	// the blocks of balances, each followed by a cache line of padding
+	private final long[] balances;
+	private final ReentrantLock[] locks;
+
+	/**
+	 * A lock followed by a cache line of padding. The state of a
+	 * ReentrantLock is in a separate object, allocated right after the lock,
+	 * so the padding keeps the states of consecutively created locks apart.
+	 */
+	@SuppressWarnings("serial")
+	private static class PaddedLock extends ReentrantLock {
+		@SuppressWarnings("unused")
+		private long p0, p1, p2, p3, p4, p5, p6, p7;
+	}
+
+	public Ledger(int accounts, long initialBalance) {
+		this(accounts, initialBalance, STRIPES);
+	}
+
+	public Ledger(int accounts, long initialBalance, int stripes) {
+		if (stripes <= 0)
+			throw new IllegalArgumentException("stripes not positive: "
+					+ stripes);
+		if (accounts < 0)
+			throw new IllegalArgumentException("negative accounts: "
+					+ accounts);
+		long slots = accounts + ((long) accounts >>> BLOCK_SHIFT << LINE_SHIFT);
+		if (slots > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException("too many accounts: " + accounts);
+		this.accounts = accounts;
+		balances = new long[(int) slots];
+		for (int id = 0; id < accounts; id++)
+			balances[slot(id)] = initialBalance;
+		locks = new ReentrantLock[stripes];
+		for (int i = 0; i < stripes; i++)
+			locks[i] = new PaddedLock();
+	}
+
+	public int accounts() {
+		return accounts;
+	}
+
+	private int stripe(int id) {
+		return (id >>> BLOCK_SHIFT) % locks.length;
+	}
+
+	/**
+	 * The index of the balance of account <code>id</code>, past the padding
+	 * of the blocks before it.
+	 */
+	private static int slot(int id) {
+		return id + (id >>> BLOCK_SHIFT << LINE_SHIFT);
+	}
+
+	/**
+	 * Move <code>amount</code> from account <code>fromId</code> to account
+	 * <code>toId</code>, if the first one has that much.
+	 *
+	 * @return whether the transfer was made
+	 */
+	public boolean transfer(int fromId, int toId, long amount) {
+		if (amount < 0)
+			throw new IllegalArgumentException("negative amount: " + amount);
+		checkId(fromId);
+		checkId(toId);
+		if (fromId == toId)
+			return balance(fromId) >= amount;
+
+		int fromStripe = stripe(fromId);
+		int toStripe = stripe(toId);
+		ReentrantLock first = locks[Math.min(fromStripe, toStripe)];
+		ReentrantLock second = locks[Math.max(fromStripe, toStripe)];
+		first.lock();
+		try {
+			if (second != first)
+				second.lock();
+			try {
+				int from = slot(fromId);
+				if (balances[from] < amount)
+					return false;
+				balances[from] -= amount;
+				balances[slot(toId)] += amount;
+				return true;
+			} finally {
+				if (second != first)
+					second.unlock();
+			}
+		} finally {
+			first.unlock();
+		}
+	}
+
+	public long balance(int id) {
+		checkId(id);
+		ReentrantLock lock = locks[stripe(id)];
+		lock.lock();
+		try {
+			return balances[slot(id)];
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * The sum of all balances, at one instant: every stripe is locked, in
+	 * order, while it is computed.
+	 */
+	public long total() {
+		for (ReentrantLock lock : locks)
+			lock.lock();
+		try {
+			long total = 0;
+			// the padding slots are all 0
+			for (long balance : balances)
+				total += balance;
+			return total;
+		} finally {
+			for (int i = locks.length - 1; i >= 0; i--)
+				locks[i].unlock();
+		}
+	}
+
+	private void checkId(int id) {
+		if (id < 0 || id >= accounts)
+			throw new IllegalArgumentException("no account " + id);
+	}
+
+	/**
+	 * Makes random transfers until told to stop.
+	 */
+	static class Teller extends Thread {
+		private final Ledger ledger;
+		private final double skew;
+		private final AtomicLong transfers;
+		private volatile boolean stopped;
+
+		/**
+		 * With <code>skew</code> 1, every account is equally likely; with
+		 * larger skews, accounts with small ids are more and more likely.
+		 */
+		Teller(Ledger ledger, double skew, AtomicLong transfers) {
+			this.ledger = ledger;
+			this.skew = skew;
+			this.transfers = transfers;
+		}
+
+		@Override
+		public void run() {
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			int accounts = ledger.accounts();
+			long count = 0;
+			while (!stopped) {
+				int from = account(random, accounts);
+				int to = account(random, accounts);
+				ledger.transfer(from, to, random.nextInt(100));
+				count++;
+			}
+			transfers.addAndGet(count);
+		}
+
+		private int account(ThreadLocalRandom random, int accounts) {
+			if (skew == 1)
+				return random.nextInt(accounts);
+			return (int) (accounts * Math.pow(random.nextDouble(), skew));
+		}
+
+		void finish() {
+			stopped = true;
+		}
+	}
+
+	private static void benchmark(String name, Ledger ledger, double skew,
+			int threads, double seconds) throws InterruptedException {
+		long before = ledger.total();
+		AtomicLong transfers = new AtomicLong();
+		Teller[] tellers = new Teller[threads];
+		for (int i = 0; i < threads; i++) {
+			tellers[i] = new Teller(ledger, skew, transfers);
+			tellers[i].start();
+		}
+		Thread.sleep((long) (seconds * 1000));
+		for (Teller teller : tellers)
+			teller.finish();
+		for (Teller teller : tellers)
+			teller.join();
+
+		System.out.printf("%-8s %,14.0f transfers/s   checksum: %d\n", name,
+				transfers.get() / seconds, before - ledger.total());
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 22;
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime
+				.getRuntime().availableProcessors();
+		double seconds = args.length > 2 ? Double.parseDouble(args[2]) : 3;
+
+		Ledger ledger = new Ledger(accounts, 1000);
+		System.out.printf("%,d accounts, %d stripes, %d threads\n", accounts,
+				STRIPES, threads);
+		// a warm-up round for the JIT
+		benchmark("warm-up", ledger, 1, threads, 1);
+		benchmark("uniform", ledger, 1, threads, seconds);
+		// half the accounts picked are among the lowest 1 / 2^8 of them
+		benchmark("skewed", ledger, 8, threads, seconds);
+	}
+}
@@ -0,0 +1,323 @@
+package blender;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Blends every pair of same-named images of two directories into a third
+ * directory.<br/>
+ *
+ * The work is a pipeline of four stages, each with its own threads: reading
+ * the files, decoding them, blending and encoding the result. The stages are
+ * connected by bounded queues, so a fast stage blocks instead of piling up
+ * decoded images in memory when the next one falls behind. Decoded and blended
+ * rasters come from an {@link IntBufferPool} and go back to it once the next
+ * stage is done with them.
+ *
+ * Usage: <code>java blender.BatchBlender dir1 dir2 outputDir [format]</code>
+ */
+
+public class BatchBlender {
+
+	private static final int QUEUE_CAPACITY = 4;
+	private static final Job END = new Job(null);
+
+	private final File dir1, dir2, outputDir;
+	private final String format;
+	private final IntBufferPool buffers;
+	private int readers = 2;
+	private int decoders = Runtime.getRuntime().availableProcessors();
+	private int blenders = 1;
+	private int encoders = Runtime.getRuntime().availableProcessors();
+	private BlendMode mode = BlendMode.LINEAR;
+	private double weight = 0.5;
+
+	private final AtomicInteger blended = new AtomicInteger();
+	private final AtomicInteger failed = new AtomicInteger();
+
+	public BatchBlender(File dir1, File dir2, File outputDir, String format) {
+		this.dir1 = dir1;
+		this.dir2 = dir2;
+		this.outputDir = outputDir;
+		this.format = format;
+		this.buffers = new IntBufferPool(4 * QUEUE_CAPACITY);
+	}
+
+	/**
+	 * Set the number of threads of each stage.
+	 */
+	public void setParallelism(int readers, int decoders, int blenders,
+			int encoders) {
+		this.readers = readers;
+		this.decoders = decoders;
+		this.blenders = blenders;
+		this.encoders = encoders;
+	}
+
+	public void setMode(BlendMode mode) {
+		this.mode = mode;
+	}
+
+	public void setWeight(double weight) {
+		this.weight = weight;
+	}
+
+	/**
+	 * Blend all pairs and wait until their results are written.
+	 *
+	 * @return the number of images blended
+	 * @throws IOException
+	 *             if an input directory cannot be listed
+	 */
+	public int run() throws IOException, InterruptedException {
+		String[] files = list(dir1);
+		list(dir2);
+		Arrays.sort(files);
+		outputDir.mkdirs();
+		BlockingQueue<Job> names = new ArrayBlockingQueue<Job>(QUEUE_CAPACITY);
+		BlockingQueue<Job> read = new ArrayBlockingQueue<Job>(QUEUE_CAPACITY);
+		BlockingQueue<Job> decoded = new ArrayBlockingQueue<Job>(
+				QUEUE_CAPACITY);
+		BlockingQueue<Job> results = new ArrayBlockingQueue<Job>(
+				QUEUE_CAPACITY);
+
+		List<Thread> threads = new ArrayList<Thread>();
+		threads.addAll(new ReadStage(names, read).start(readers));
+		threads.addAll(new DecodeStage(read, decoded).start(decoders));
+		threads.addAll(new BlendStage(decoded, results).start(blenders));
+		threads.addAll(new EncodeStage(results, null).start(encoders));
+
+		try {
+			for (String name : files)
+				if (new File(dir2, name).isFile())
+					names.put(new Job(name));
+		} finally {
+			names.put(END);
+		}
+
+		for (Thread thread : threads)
+			thread.join();
+		return blended.get();
+	}
+
+	public int failed() {
+		return failed.get();
+	}
+
+	private static String[] list(File dir) throws IOException {
+		String[] files = dir.list();
+		if (files == null)
+			throw new IOException("cannot list " + dir);
+		return files;
+	}
+
+	/**
+	 * One image pair on its way through the pipeline.
+	 */
+	static class Job {
+		final String name;
+		byte[] bytes1, bytes2;
+		int width, height;
+		int[] pixels1, pixels2, result;
+
+		Job(String name) {
+			this.name = name;
+		}
+	}
+
+	/**
+	 * A pipeline stage: its threads take jobs from <code>in</code>, process
+	 * them and put them to <code>out</code>. Once all threads have seen the
+	 * end of the input or died, the last one passes the end on.
+	 */
+	abstract class Stage {
+		private final BlockingQueue<Job> in;
+		private final BlockingQueue<Job> out;
+		private final AtomicInteger running = new AtomicInteger();
+
+		Stage(BlockingQueue<Job> in, BlockingQueue<Job> out) {
+			this.in = in;
+			this.out = out;
+		}
+
+		abstract void process(Job job) throws Exception;
+
+		List<Thread> start(int noOfThreads) {
+			running.set(noOfThreads);
+			List<Thread> threads = new ArrayList<Thread>();
+			for (int i = 0; i < noOfThreads; i++) {
+				Thread thread = new Thread(getClass().getSimpleName() + "-" + i) {
+					@Override
+					public void run() {
+						try {
+							work();
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+					}
+				};
+				thread.start();
+				threads.add(thread);
+			}
+			return threads;
+		}
+
+		private void work() throws InterruptedException {
+			try {
+				while (true) {
+					Job job = in.take();
+					if (job == END) {
+						// let the other threads of this stage see the end too
+						in.put(END);
+						return;
+					}
+					try {
+						process(job);
+					} catch (Throwable e) {
+						// an Error too, e.g. running out of memory decoding
+						// a large image
+						System.err.println("Could not blend " + job.name
+								+ ": " + e);
+						failed.incrementAndGet();
+						release(job);
+						continue;
+					}
+					if (out != null)
+						out.put(job);
+				}
+			} finally {
+				if (running.decrementAndGet() == 0 && out != null)
+					out.put(END);
+			}
+		}
+	}
+
+	class ReadStage extends Stage {
+		ReadStage(BlockingQueue<Job> in, BlockingQueue<Job> out) {
+			super(in, out);
+		}
+
+		@Override
+		void process(Job job) throws IOException {
+			job.bytes1 = Files.readAllBytes(new File(dir1, job.name).toPath());
+			job.bytes2 = Files.readAllBytes(new File(dir2, job.name).toPath());
+		}
+	}
+
+	class DecodeStage extends Stage {
+		DecodeStage(BlockingQueue<Job> in, BlockingQueue<Job> out) {
+			super(in, out);
+		}
+
+		@Override
+		void process(Job job) throws IOException {
+			BufferedImage img1 = decode(job.bytes1);
+			BufferedImage img2 = decode(job.bytes2);
+			job.bytes1 = job.bytes2 = null;
+			if (img1.getWidth() != img2.getWidth()
+					|| img1.getHeight() != img2.getHeight())
+				throw new IOException("images of different sizes");
+			job.width = img1.getWidth();
+			job.height = img1.getHeight();
+			job.pixels1 = pixels(img1);
+			job.pixels2 = pixels(img2);
+		}
+
+		private BufferedImage decode(byte[] bytes) throws IOException {
+			BufferedImage img = ImageIO.read(new ByteArrayInputStream(bytes));
+			if (img == null)
+				throw new IOException("unknown image format");
+			return img;
+		}
+
+		private int[] pixels(BufferedImage img) {
+			int width = img.getWidth();
+			int[] pixels = buffers.acquire(width * img.getHeight());
+			return img.getRGB(0, 0, width, img.getHeight(), pixels, 0, width);
+		}
+	}
+
+	class BlendStage extends Stage {
+		BlendStage(BlockingQueue<Job> in, BlockingQueue<Job> out) {
+			super(in, out);
+		}
+
+		@Override
+		void process(Job job) {
+			int length = job.width * job.height;
+			job.result = buffers.acquire(length);
+			mode.blendRow(job.pixels1, 0, job.pixels2, 0, job.result, 0,
+					length, BlendKernel.fixedWeight(weight));
+			buffers.release(job.pixels1);
+			buffers.release(job.pixels2);
+			job.pixels1 = job.pixels2 = null;
+		}
+	}
+
+	class EncodeStage extends Stage {
+		private final DirectColorModel colorModel = new DirectColorModel(24,
+				0xFF0000, 0x00FF00, 0x0000FF);
+
+		EncodeStage(BlockingQueue<Job> in, BlockingQueue<Job> out) {
+			super(in, out);
+		}
+
+		@Override
+		void process(Job job) throws IOException {
+			// wrap the pooled result without copying it
+			WritableRaster raster = Raster.createPackedRaster(
+					new DataBufferInt(job.result, job.result.length),
+					job.width, job.height, job.width, colorModel.getMasks(),
+					null);
+			BufferedImage img = new BufferedImage(colorModel, raster, false,
+					null);
+			String name = job.name.replaceFirst("\\.[^.]*$", "") + "."
+					+ format;
+			if (!ImageIO.write(img, format, new File(outputDir, name)))
+				throw new IOException("no writer for " + format);
+			release(job);
+			blended.incrementAndGet();
+		}
+	}
+
+	private void release(Job job) {
+		buffers.release(job.pixels1);
+		buffers.release(job.pixels2);
+		buffers.release(job.result);
+		job.pixels1 = job.pixels2 = job.result = null;
+	}
+
+	public static void main(String[] args) throws IOException,
+			InterruptedException {
+		if (args.length < 3) {
+			System.err.println("Usage: BatchBlender dir1 dir2 outputDir [format]");
+			System.exit(1);
+		}
+		BatchBlender batch = new BatchBlender(new File(args[0]), new File(
+				args[1]), new File(args[2]), args.length > 3 ? args[3] : "png");
+
+		long start = System.nanoTime();
+		int images = batch.run();
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		System.out.printf("Blended %d images in %.2fs: %.2f images/s\n",
+				images, seconds, images / seconds);
+		if (batch.failed() > 0)
+			System.out.println("Failed: " + batch.failed());
+	}
+}
@@ -0,0 +1,58 @@
+package blender;
+
+/**
+ * Integer fixed-point blending of packed RGB pixels.<br/>
+ *
+ * Weights are fractions of {@link #ONE}. Red and blue are 16 bits apart in
+ * a packed pixel, so after masking out green both are blended with a single
+ * 32-bit multiply per image: each channel times a weight of at most 256 fits
+ * in its 16-bit lane without carrying into the other one. Green gets a second
+ * multiply. The result is opaque, like {@link java.awt.Color#getRGB()}.<br/>
+ *
+ * With a weight of 0.5, or any multiple of 1/256, the result is identical to
+ * truncating <code>c1 * weight + c2 * (1 - weight)</code> for every channel.
+ * Other weights are rounded down to one, which changes a channel by at most
+ * 1.
+ */
+
+public final class BlendKernel {
+
+	public static final int ONE = 256;
+
+	private BlendKernel() {
+	}
+
+	/**
+	 * The fixed-point representation of <code>weight</code>, in [0, 1].
+	 */
+	public static int fixedWeight(double weight) {
+		return (int) (weight * ONE);
+	}
+
+	/**
+	 * Blend two pixels, giving <code>weight</code>/{@link #ONE} to
+	 * <code>rgb1</code> and the rest to <code>rgb2</code>.
+	 */
+	public static int blend(int rgb1, int rgb2, int weight) {
+		int weight2 = ONE - weight;
+		int rb = ((rgb1 & 0xFF00FF) * weight + (rgb2 & 0xFF00FF) * weight2) >>> 8;
+		int g = ((rgb1 & 0x00FF00) * weight + (rgb2 & 0x00FF00) * weight2) >>> 8;
+		return 0xFF000000 | (rb & 0xFF00FF) | (g & 0x00FF00);
+	}
+
+	/**
+	 * Blend <code>length</code> pixels of <code>src1</code> and
+	 * <code>src2</code> into <code>dst</code>.
+	 */
+	public static void blendRow(int[] src1, int offset1, int[] src2,
+			int offset2, int[] dst, int dstOffset, int length, int weight) {
+		int weight2 = ONE - weight;
+		for (int i = 0; i < length; i++) {
+			int rgb1 = src1[offset1 + i];
+			int rgb2 = src2[offset2 + i];
+			int rb = ((rgb1 & 0xFF00FF) * weight + (rgb2 & 0xFF00FF) * weight2) >>> 8;
+			int g = ((rgb1 & 0x00FF00) * weight + (rgb2 & 0x00FF00) * weight2) >>> 8;
+			dst[dstOffset + i] = 0xFF000000 | (rb & 0xFF00FF) | (g & 0x00FF00);
+		}
+	}
+}
@@ -0,0 +1,189 @@
+package blender;
+
+/**
+ * The ways a {@link Blender} can combine the pixels of its two images.<br/>
+ *
+ * Each mode computes f(a, b) for every channel a of the first image and b of
+ * the second one. The weight then mixes the first image back in:
+ * <code>weight * a + (1 - weight) * f(a, b)</code>. For {@link #LINEAR},
+ * f(a, b) = b, so the weight is the share of the first image, as before.<br/>
+ *
+ * Every mode has its own loop over a whole row, so the only dynamic dispatch
+ * is one call per row; inside the loop, the channel function is a static
+ * method the JIT inlines.
+ */
+
+public enum BlendMode {
+
+	/** f(a, b) = b */
+	LINEAR {
+		@Override
+		public void blendRow(int[] src1, int offset1, int[] src2,
+				int offset2, int[] dst, int dstOffset, int length, int weight) {
+			BlendKernel.blendRow(src1, offset1, src2, offset2, dst, dstOffset,
+					length, weight);
+		}
+	},
+
+	/**
+	 * Like {@link #LINEAR}, but mixing linear light intensities instead of
+	 * gamma-encoded sRGB values, so midtones do not darken. See
+	 * {@link LinearLight}.
+	 */
+	LINEAR_LIGHT {
+		@Override
+		public void blendRow(int[] src1, int offset1, int[] src2,
+				int offset2, int[] dst, int dstOffset, int length, int weight) {
+			LinearLight.blendRow(src1, offset1, src2, offset2, dst, dstOffset,
+					length, weight);
+		}
+
+		@Override
+		public void prepare(int weight) {
+			LinearLight.table(weight);
+		}
+	},
+
+	/** f(a, b) = a * b / 255, darkens */
+	MULTIPLY {
+		@Override
+		public void blendRow(int[] src1, int offset1, int[] src2,
+				int offset2, int[] dst, int dstOffset, int length, int weight) {
+			for (int i = 0; i < length; i++) {
+				int rgb1 = src1[offset1 + i];
+				int rgb2 = src2[offset2 + i];
+				int r = multiply((rgb1 >> 16) & 255, (rgb2 >> 16) & 255);
+				int g = multiply((rgb1 >> 8) & 255, (rgb2 >> 8) & 255);
+				int b = multiply(rgb1 & 255, rgb2 & 255);
+				dst[dstOffset + i] = BlendKernel.blend(rgb1, pack(r, g, b),
+						weight);
+			}
+		}
+	},
+
+	/** f(a, b) = 255 - (255 - a) * (255 - b) / 255, lightens */
+	SCREEN {
+		@Override
+		public void blendRow(int[] src1, int offset1, int[] src2,
+				int offset2, int[] dst, int dstOffset, int length, int weight) {
+			for (int i = 0; i < length; i++) {
+				int rgb1 = src1[offset1 + i];
+				int rgb2 = src2[offset2 + i];
+				int r = screen((rgb1 >> 16) & 255, (rgb2 >> 16) & 255);
+				int g = screen((rgb1 >> 8) & 255, (rgb2 >> 8) & 255);
+				int b = screen(rgb1 & 255, rgb2 & 255);
+				dst[dstOffset + i] = BlendKernel.blend(rgb1, pack(r, g, b),
+						weight);
+			}
+		}
+	},
+
+	/** multiply where a is dark, screen where a is light, both doubled */
+	OVERLAY {
+		@Override
+		public void blendRow(int[] src1, int offset1, int[] src2,
+				int offset2, int[] dst, int dstOffset, int length, int weight) {
+			for (int i = 0; i < length; i++) {
+				int rgb1 = src1[offset1 + i];
+				int rgb2 = src2[offset2 + i];
+				int r = overlay((rgb1 >> 16) & 255, (rgb2 >> 16) & 255);
+				int g = overlay((rgb1 >> 8) & 255, (rgb2 >> 8) & 255);
+				int b = overlay(rgb1 & 255, rgb2 & 255);
+				dst[dstOffset + i] = BlendKernel.blend(rgb1, pack(r, g, b),
+						weight);
+			}
+		}
+	},
+
+	/** f(a, b) = min(a + b, 255) */
+	ADDITIVE {
+		@Override
+		public void blendRow(int[] src1, int offset1, int[] src2,
+				int offset2, int[] dst, int dstOffset, int length, int weight) {
+			for (int i = 0; i < length; i++) {
+				int rgb1 = src1[offset1 + i];
+				int rgb2 = src2[offset2 + i];
+				int r = Math.min(((rgb1 >> 16) & 255) + ((rgb2 >> 16) & 255), 255);
+				int g = Math.min(((rgb1 >> 8) & 255) + ((rgb2 >> 8) & 255), 255);
+				int b = Math.min((rgb1 & 255) + (rgb2 & 255), 255);
+				dst[dstOffset + i] = BlendKernel.blend(rgb1, pack(r, g, b),
+						weight);
+			}
+		}
+	},
+
+	/** f(a, b) = |a - b| */
+	DIFFERENCE {
+		@Override
+		public void blendRow(int[] src1, int offset1, int[] src2,
+				int offset2, int[] dst, int dstOffset, int length, int weight) {
+			for (int i = 0; i < length; i++) {
+				int rgb1 = src1[offset1 + i];
+				int rgb2 = src2[offset2 + i];
+				int r = Math.abs(((rgb1 >> 16) & 255) - ((rgb2 >> 16) & 255));
+				int g = Math.abs(((rgb1 >> 8) & 255) - ((rgb2 >> 8) & 255));
+				int b = Math.abs((rgb1 & 255) - (rgb2 & 255));
+				dst[dstOffset + i] = BlendKernel.blend(rgb1, pack(r, g, b),
+						weight);
+			}
+		}
+	},
+
+	/**
+	 * The second image drawn over the first one using its alpha channel:
+	 * f(a, b) = alpha * b + (1 - alpha) * a. Without an alpha channel the
+	 * second image is opaque and this is the same as {@link #LINEAR}.
+	 */
+	ALPHA_OVER {
+		@Override
+		public void blendRow(int[] src1, int offset1, int[] src2,
+				int offset2, int[] dst, int dstOffset, int length, int weight) {
+			for (int i = 0; i < length; i++) {
+				int rgb1 = src1[offset1 + i];
+				int rgb2 = src2[offset2 + i];
+				// alpha in [0, 255] scaled to a fixed-point weight in [0, 256]
+				int alpha = rgb2 >>> 24;
+				alpha += alpha >>> 7;
+				int over = BlendKernel.blend(rgb2, rgb1, alpha);
+				dst[dstOffset + i] = BlendKernel.blend(rgb1, over, weight);
+			}
+		}
+	};
+
+	/**
+	 * Blend <code>length</code> pixels of <code>src1</code> and
+	 * <code>src2</code> into <code>dst</code>, giving the fixed-point
+	 * <code>weight</code> (see {@link BlendKernel}) to <code>src1</code>.
+	 */
+	public abstract void blendRow(int[] src1, int offset1, int[] src2,
+			int offset2, int[] dst, int dstOffset, int length, int weight);
+
+	/**
+	 * Build whatever the mode needs to blend at the fixed-point
+	 * <code>weight</code>, once per run, before the rows are divided between
+	 * threads. Rows blended without it still work; they build it themselves.
+	 */
+	public void prepare(int weight) {
+	}
+
+	static int pack(int r, int g, int b) {
+		return (r << 16) | (g << 8) | b;
+	}
+
+	/**
+	 * a * b / 255, rounded, without a division.
+	 */
+	static int multiply(int a, int b) {
+		int t = a * b + 128;
+		return (t + (t >> 8)) >> 8;
+	}
+
+	static int screen(int a, int b) {
+		return 255 - multiply(255 - a, 255 - b);
+	}
+
+	static int overlay(int a, int b) {
+		return a < 128 ? multiply(2 * a, b) : 255 - multiply(2 * (255 - a),
+				255 - b);
+	}
+}
@@ -6,6 +6,7 @@ import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import util.StopWatch;
 
@@ -18,28 +19,60 @@ import util.StopWatch;
 public abstract class Blender implements Runnable {
 	protected final BufferedImage img1;
 	protected final BufferedImage img2;
+	protected final int[] pixels1;
+	protected final int[] pixels2;
 	protected int[] imageBuffer;
 	protected MemoryImageSource imageSource;
+	private volatile ProgressSink progressSink;
 	protected final int height;
 	protected final int width;
+	private final int width2;
 	private long runtime;
 
-	protected static final double weight = 0.5;
+	protected volatile BlendMode mode = BlendMode.LINEAR;
+	protected volatile double weight = 0.5;
+	private volatile Tiles tiles;
+	private volatile ForkJoinPool pool;
 
+	/**
+	 * A blender that shows its progress through <code>imageSource</code>,
+	 * whose pixels are <code>imageBuffer</code>.
+	 */
 	public Blender(BufferedImage img1, BufferedImage img2,
 			int[] imageBuffer, MemoryImageSource imageSource) {
+		this(img1, img2, imageBuffer);
+		this.imageSource = imageSource;
+		this.progressSink = new DirtyRegions(imageSource);
+	}
+
+	/**
+	 * A headless blender, writing to <code>imageBuffer</code> only. See
+	 * {@link #setProgressSink} to follow its progress.
+	 */
+	public Blender(BufferedImage img1, BufferedImage img2, int[] imageBuffer) {
 		this.img1 = img1;
 		this.img2 = img2;
 		this.imageBuffer = imageBuffer;
-		this.imageSource = imageSource;
 		this.height = img1.getHeight();
 		this.width = img1.getWidth();
+		this.pixels1 = ImagePixels.of(img1);
+		this.pixels2 = ImagePixels.of(img2);
+		this.width2 = img2.getWidth();
 	}
 
 	@Override
 	public void run() {
+		ProgressSink sink = progressSink;
 		StopWatch.start();
-		process();
+		if (sink != null)
+			sink.blendStarted();
+		mode.prepare(BlendKernel.fixedWeight(weight));
+		try {
+			process();
+		} finally {
+			if (sink != null)
+				sink.blendFinished();
+		}
 		StopWatch.stop();
 		runtime = StopWatch.getRuntime();
 		notifyListeners();
@@ -53,6 +86,127 @@ public abstract class Blender implements Runnable {
 
 	public abstract void process();
 
+	/**
+	 * Report the progress of the following runs to <code>sink</code>, or to
+	 * no one if it is null.
+	 */
+	public void setProgressSink(ProgressSink sink) {
+		this.progressSink = sink;
+	}
+
+	/**
+	 * Use <code>mode</code> for the following runs. Defaults to
+	 * {@link BlendMode#LINEAR}.
+	 */
+	public void setMode(BlendMode mode) {
+		if (mode == BlendMode.ALPHA_OVER && !img2.getColorModel().hasAlpha())
+			// an opaque image over another one simply replaces it
+			mode = BlendMode.LINEAR;
+		this.mode = mode;
+	}
+
+	/**
+	 * Use <code>weight</code>, in [0, 1], as the share of the first image
+	 * for the following runs. Defaults to 0.5.
+	 */
+	public void setWeight(double weight) {
+		if (weight < 0 || weight > 1)
+			throw new IllegalArgumentException("weight not in [0, 1]: "
+					+ weight);
+		this.weight = weight;
+	}
+
+	/**
+	 * Run the following runs on <code>pool</code>, which stays the caller's
+	 * to shut down, or on {@link EnginePool#shared()} if it is null, the
+	 * default. Implementations with threads of their own ignore it.
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * The pool the parallel implementations run their tasks on.
+	 */
+	protected ForkJoinPool pool() {
+		ForkJoinPool pool = this.pool;
+		return pool != null ? pool : EnginePool.shared();
+	}
+
+	/**
+	 * Partition the image into tiles of <code>tileWidth</code> x
+	 * <code>tileHeight</code> pixels for the following runs, or as
+	 * {@link Tiles#auto} does if both are 0, the default.
+	 */
+	public void setTileSize(int tileWidth, int tileHeight) {
+		tiles = tileWidth == 0 && tileHeight == 0 ? null : new Tiles(width,
+				height, tileWidth, tileHeight);
+	}
+
+	/**
+	 * The tiles the tiled implementations divide between their threads or
+	 * tasks.
+	 */
+	protected Tiles tiles() {
+		Tiles tiles = this.tiles;
+		if (tiles == null)
+			this.tiles = tiles = Tiles.auto(width, height);
+		return tiles;
+	}
+
+	/**
+	 * Blend the tiles [loTile, hiTile) of <code>tiles</code> into
+	 * {@link #imageBuffer}, reporting each tile to {@link #regionDone}.
+	 */
+	protected void blendTiles(Tiles tiles, int loTile, int hiTile) {
+		BlendMode mode = this.mode;
+		int fixedWeight = BlendKernel.fixedWeight(weight);
+
+		for (int tile = loTile; tile < hiTile; tile++) {
+			int x = tiles.x(tile);
+			int y = tiles.y(tile);
+			int tileWidth = tiles.width(tile);
+			int tileHeight = tiles.height(tile);
+			for (int row = y; row < y + tileHeight; row++)
+				mode.blendRow(pixels1, row * width + x, pixels2, row * width2
+						+ x, imageBuffer, row * width + x, tileWidth,
+						fixedWeight);
+
+			regionDone(x, y, tileWidth, tileHeight);
+		}
+	}
+
+	/**
+	 * Blend the rows [loRow, hiRow) into {@link #imageBuffer}, reporting each
+	 * row to {@link #regionDone}. This is the sequential work all
+	 * implementations divide between their threads or tasks.<br/>
+	 *
+	 * The rows are read straight from {@link #pixels1} and {@link #pixels2},
+	 * without per-row copies or color model conversions.
+	 */
+	protected void blendRows(int loRow, int hiRow) {
+		BlendMode mode = this.mode;
+		int fixedWeight = BlendKernel.fixedWeight(weight);
+
+		for (int row = loRow; row < hiRow; row++) {
+			mode.blendRow(pixels1, row * width, pixels2, row * width2,
+					imageBuffer, row * width, width, fixedWeight);
+
+			regionDone(0, row, width, 1);
+		}
+	}
+
+	/**
+	 * Mark a region of {@link #imageBuffer} as finished and tell the
+	 * {@link ProgressSink}, if there is one. With an {@link #imageSource}, the
+	 * sink is a {@link DirtyRegions}.
+	 */
+	protected void regionDone(int x, int y, int width, int height) {
+		ProgressSink sink = progressSink;
+		if (sink != null)
+			sink.regionDone(x, y, width, height);
+	}
+
 	Set<PropertyChangeListener> listeners = new HashSet<PropertyChangeListener>();
 	
 	public void addPropertyChangeListener(
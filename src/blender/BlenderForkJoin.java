@@ -6,7 +6,9 @@ import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.RecursiveAction;
 
 /**
- * Fork-join implementation of image blending
+ * Fork-join implementation of image blending. The tasks split the range of
+ * tiles of {@link Blender#tiles()} in halves down to single tiles; in Morton
+ * order each half is a compact block of the image.
  */
 
 /*
@@ -16,11 +18,11 @@ import java.util.concurrent.RecursiveAction;
  * 2. In BlenderForkJoin, transform the computation task to not implement
  * Runnable, but extend RecursiveAction (the code in process() will now break).
  * 
- * 3. In process(), create a ForkJoinPool (using its constructor) instead of an
- * ExecutorService.
+ * 3. In process(), use the long-lived ForkJoinPool returned by pool() instead
+ * of an ExecutorService, rather than creating a pool of your own in every run.
  * 
  * 4. Instead of creating many tasks, create only one RecursiveAction task and
- * pass it to the pool's execute().
+ * pass it to the pool's invoke(), which returns once the task is done.
  * 
  * 5. Now, there is no parallelism. Introduce parallelism by forking the
  * computation in compute(). If the size of the task is greater than some
@@ -39,65 +41,45 @@ public class BlenderForkJoin extends Blender {
 
 	}
 
+	public BlenderForkJoin(BufferedImage img1, BufferedImage img2,
+			int[] imageBuffer) {
+		super(img1, img2, imageBuffer);
+	}
+
 	@Override
 	public void process() {
-		ForkJoinPool pool = new ForkJoinPool();
+		ForkJoinPool pool = pool();
+		Tiles tiles = tiles();
 		BlenderPartialComputationTask task = new BlenderPartialComputationTask(
-				0, height);
+				tiles, 0, tiles.count());
 		pool.invoke(task);
 	}
 
 	@SuppressWarnings("serial")
 	private class BlenderPartialComputationTask extends RecursiveAction {
 
-		private int loRow;
-		private int hiRow;
-		private int threshold = 100;
+		private Tiles tiles;
+		private int loTile;
+		private int hiTile;
 
-		public BlenderPartialComputationTask(int loRow, int hiRow) {
-			this.loRow = loRow;
-			this.hiRow = hiRow;
+		public BlenderPartialComputationTask(Tiles tiles, int loTile,
+				int hiTile) {
+			this.tiles = tiles;
+			this.loTile = loTile;
+			this.hiTile = hiTile;
 
 		}
 
 		@Override
 		public void compute() {
-			if (hiRow - loRow < threshold) {
-				int[] rgbim1 = new int[width];
-				int[] rgbim2 = new int[width];
-
-				for (int row = loRow; row < hiRow; row++) {
-					img1.getRGB(0, row, width, 1, rgbim1, 0, width);
-					img2.getRGB(0, row, width, 1, rgbim2, 0, width);
-
-					for (int col = 0; col < width; col++) {
-						int rgb1 = rgbim1[col];
-						int r1 = (rgb1 >> 16) & 255;
-						int g1 = (rgb1 >> 8) & 255;
-						int b1 = rgb1 & 255;
-
-						int rgb2 = rgbim2[col];
-						int r2 = (rgb2 >> 16) & 255;
-						int g2 = (rgb2 >> 8) & 255;
-						int b2 = rgb2 & 255;
-
-						int r3 = (int) (r1 * weight + r2 * (1.0 - weight));
-						int g3 = (int) (g1 * weight + g2 * (1.0 - weight));
-						int b3 = (int) (b1 * weight + b2 * (1.0 - weight));
-
-						imageBuffer[row * width + col] = new java.awt.Color(r3,
-								g3, b3).getRGB();
-					}
-
-					imageSource.newPixels(0, row, width, 1, true);
-
-				}
+			if (hiTile - loTile <= 1) {
+				blendTiles(tiles, loTile, hiTile);
 			} else {
-				int middle = (hiRow + loRow) / 2;
+				int middle = (hiTile + loTile) / 2;
 				BlenderPartialComputationTask first = new BlenderPartialComputationTask(
-						loRow, middle);
+						tiles, loTile, middle);
 				BlenderPartialComputationTask second = new BlenderPartialComputationTask(
-						middle, hiRow);
+						tiles, middle, hiTile);
 				
 				first.fork();
 				second.compute();
@@ -2,9 +2,11 @@ package blender;
 
 import java.awt.image.BufferedImage;
 import java.awt.image.MemoryImageSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Future;
 
 /*
  The goal of this exercise is to parallelize the blender 
@@ -15,10 +17,14 @@ import java.util.concurrent.TimeUnit;
  class (the previous exercise) if it worked well.
  Otherwise, copy the implementation from blender.solutions.BlenderThreads
 
- 2. Convert the Thread-based implementation to a thread pool one 
- in a manner similar to the previous exercise.
+ 2. Convert the Thread-based implementation to tasks submitted to the 
+ long-lived pool returned by pool(), rather than creating and shutting 
+ down a pool of your own in every run.
 
- 3. Remove the UnimplementedExercise interface and test.
+ 3. Wait for the Futures of the tasks before process() returns, so that 
+ no task is still writing to the image buffer afterwards.
+
+ 4. Remove the UnimplementedExercise interface and test.
  */
 
 public class BlenderPool extends Blender {
@@ -29,68 +35,57 @@ public class BlenderPool extends Blender {
 
 	}
 
+	public BlenderPool(BufferedImage img1, BufferedImage img2,
+			int[] imageBuffer) {
+		super(img1, img2, imageBuffer);
+	}
+
 	@Override
 	public void process() {
-		int noOfCores = Runtime.getRuntime().availableProcessors();
-		int noOfTasks = noOfCores;
-		int chunkSize = height / noOfTasks;
-		ExecutorService threadPool = Executors.newFixedThreadPool(noOfCores);
-
-		for (int i = 0; i < noOfTasks; i++)
-			threadPool.execute(new BlenderPartialComputationTask(i * chunkSize,
-					(i + 1) * chunkSize));
-
-		threadPool.shutdown();
+		Tiles tiles = tiles();
+		// the long-lived pool, rather than a new one to shut down per run
+		ExecutorService threadPool = pool();
+
+		// one task per tile, so a slow tile does not hold up a whole chunk
+		List<Future<?>> results = new ArrayList<Future<?>>(tiles.count());
+		for (int i = 0; i < tiles.count(); i++)
+			results.add(threadPool.submit(new BlenderPartialComputationTask(
+					tiles, i)));
+
+		// the tasks write to the image buffer, so even when interrupted, keep
+		// waiting until none of them runs any more
+		boolean interrupted = false;
 		try {
-			while (!threadPool.awaitTermination(500, TimeUnit.MILLISECONDS))
-				;
-		} catch (InterruptedException e) {
-			System.out.println("WTF???!!");
+			for (Future<?> result : results)
+				while (true)
+					try {
+						result.get();
+						break;
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			if (interrupted)
+				Thread.currentThread().interrupt();
 		}
 	}
 
 	class BlenderPartialComputationTask implements Runnable {
 
-		private int loRow;
-		private int hiRow;
+		private Tiles tiles;
+		private int tile;
 
-		public BlenderPartialComputationTask(int loRow, int hiRow) {
-			this.loRow = loRow;
-			this.hiRow = hiRow;
+		public BlenderPartialComputationTask(Tiles tiles, int tile) {
+			this.tiles = tiles;
+			this.tile = tile;
 
 		}
 
 		@Override
 		public void run() {
-			int[] rgbim1 = new int[width];
-			int[] rgbim2 = new int[width];
-
-			for (int row = loRow; row < hiRow; row++) {
-				img1.getRGB(0, row, width, 1, rgbim1, 0, width);
-				img2.getRGB(0, row, width, 1, rgbim2, 0, width);
-
-				for (int col = 0; col < width; col++) {
-					int rgb1 = rgbim1[col];
-					int r1 = (rgb1 >> 16) & 255;
-					int g1 = (rgb1 >> 8) & 255;
-					int b1 = rgb1 & 255;
-
-					int rgb2 = rgbim2[col];
-					int r2 = (rgb2 >> 16) & 255;
-					int g2 = (rgb2 >> 8) & 255;
-					int b2 = rgb2 & 255;
-
-					int r3 = (int) (r1 * weight + r2 * (1.0 - weight));
-					int g3 = (int) (g1 * weight + g2 * (1.0 - weight));
-					int b3 = (int) (b1 * weight + b2 * (1.0 - weight));
-
-					imageBuffer[row * width + col] = new java.awt.Color(r3, g3,
-							b3).getRGB();
-				}
-
-				imageSource.newPixels(0, row, width, 1, true);
-
-			}
+			blendTiles(tiles, tile, tile + 1);
 		}
 	}
 }
@@ -0,0 +1,257 @@
+package blender;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.MemoryImageSource;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progressive implementation of image blending: a coarse preview of the
+ * whole image first, then finer and finer ones, then the full
+ * resolution.<br/>
+ *
+ * On the first run, both inputs are reduced to mip pyramids, each level half
+ * the width and height of the one below, down to at most
+ * {@link #COARSEST_WIDTH} pixels wide. Every run then blends the coarsest
+ * level and scales it up into the whole {@link #imageBuffer}, so a full-frame
+ * preview shows up after a few milliseconds, and repeats this every second
+ * level, each a quarter of the size of the next, before blending the full
+ * resolution tile by tile. All steps run in parallel on a fork-join pool.<br/>
+ *
+ * A new run, weight or mode cancels the run in progress: each run takes a
+ * number from a generation counter, which those changes advance, and stops at
+ * the next band or tile once its number is no longer the latest.
+ */
+
+public class BlenderProgressive extends Blender {
+
+	public static final int COARSEST_WIDTH = 128;
+
+	// rows per task when building or blending levels
+	private static final int ROWS = 16;
+
+	private final AtomicLong generation = new AtomicLong();
+	private int[][] pyramid1, pyramid2;
+	private int[] levelWidths, levelHeights;
+
+	public BlenderProgressive(BufferedImage img1, BufferedImage img2,
+			int[] imageBuffer, MemoryImageSource imageSource) {
+		super(img1, img2, imageBuffer, imageSource);
+	}
+
+	public BlenderProgressive(BufferedImage img1, BufferedImage img2,
+			int[] imageBuffer) {
+		super(img1, img2, imageBuffer);
+	}
+
+	@Override
+	public void setMode(BlendMode mode) {
+		generation.incrementAndGet();
+		super.setMode(mode);
+	}
+
+	@Override
+	public void setWeight(double weight) {
+		generation.incrementAndGet();
+		super.setWeight(weight);
+	}
+
+	/**
+	 * Cancel the run in progress, if any.
+	 */
+	public void cancel() {
+		generation.incrementAndGet();
+	}
+
+	@Override
+	public void process() {
+		long run = generation.incrementAndGet();
+		ForkJoinPool pool = pool();
+		buildPyramids(pool);
+
+		int levels = levelWidths.length;
+		for (int level = levels - 1; level > 0; level -= 2) {
+			if (cancelled(run))
+				return;
+			pool.invoke(new LevelTask(run, level, 0, levelHeights[level]));
+			// some bands may have stopped early: not a whole preview
+			if (cancelled(run))
+				return;
+			regionDone(0, 0, width, height);
+		}
+
+		Tiles tiles = tiles();
+		pool.invoke(new TileTask(run, tiles, 0, tiles.count()));
+	}
+
+	private boolean cancelled(long run) {
+		return generation.get() != run;
+	}
+
+	private synchronized void buildPyramids(ForkJoinPool pool) {
+		if (pyramid1 != null)
+			return;
+		int levels = 1;
+		while ((width - 1 >> levels - 1) + 1 > COARSEST_WIDTH)
+			levels++;
+		levelWidths = new int[levels];
+		levelHeights = new int[levels];
+		for (int level = 0; level < levels; level++) {
+			// rounded up, so every pixel of a level covers whole pixels below
+			levelWidths[level] = (width - 1 >> level) + 1;
+			levelHeights[level] = (height - 1 >> level) + 1;
+		}
+
+		int[][] pyramid1 = new int[levels][];
+		int[][] pyramid2 = new int[levels][];
+		pyramid1[0] = pixels1;
+		pyramid2[0] = pixels2;
+		for (int level = 1; level < levels; level++) {
+			pyramid1[level] = new int[levelWidths[level] * levelHeights[level]];
+			pyramid2[level] = new int[levelWidths[level] * levelHeights[level]];
+			// the second image may be wider than the first one
+			int stride2 = level == 1 ? img2.getWidth() : levelWidths[level - 1];
+			DownsampleTask first = new DownsampleTask(pyramid1[level - 1],
+					levelWidths[level - 1], pyramid1[level], level, 0,
+					levelHeights[level]);
+			pool.execute(first);
+			pool.invoke(new DownsampleTask(pyramid2[level - 1], stride2,
+					pyramid2[level], level, 0, levelHeights[level]));
+			first.join();
+		}
+		this.pyramid1 = pyramid1;
+		this.pyramid2 = pyramid2;
+	}
+
+	/**
+	 * Average each 2x2 block of level - 1 into a pixel of level, for the rows
+	 * [loRow, hiRow) of level.
+	 */
+	@SuppressWarnings("serial")
+	private class DownsampleTask extends RecursiveAction {
+		private final int[] src, dst;
+		private final int srcStride, level, loRow, hiRow;
+
+		DownsampleTask(int[] src, int srcStride, int[] dst, int level,
+				int loRow, int hiRow) {
+			this.src = src;
+			this.srcStride = srcStride;
+			this.dst = dst;
+			this.level = level;
+			this.loRow = loRow;
+			this.hiRow = hiRow;
+		}
+
+		@Override
+		protected void compute() {
+			if (hiRow - loRow > ROWS) {
+				int middle = (loRow + hiRow) / 2;
+				invokeAll(new DownsampleTask(src, srcStride, dst, level,
+						loRow, middle), new DownsampleTask(src, srcStride,
+						dst, level, middle, hiRow));
+				return;
+			}
+
+			int srcWidth = levelWidths[level - 1];
+			int srcHeight = levelHeights[level - 1];
+			int dstWidth = levelWidths[level];
+			for (int y = loRow; y < hiRow; y++) {
+				// odd sizes repeat the last row or column
+				int row0 = 2 * y * srcStride;
+				int row1 = Math.min(2 * y + 1, srcHeight - 1) * srcStride;
+				for (int x = 0; x < dstWidth; x++) {
+					int x0 = 2 * x;
+					int x1 = Math.min(2 * x + 1, srcWidth - 1);
+					dst[y * dstWidth + x] = average(src[row0 + x0],
+							src[row0 + x1], src[row1 + x0], src[row1 + x1]);
+				}
+			}
+		}
+	}
+
+	private static int average(int p0, int p1, int p2, int p3) {
+		// red and blue in 16-bit lanes have room for the sum of four
+		int rb = (p0 & 0xFF00FF) + (p1 & 0xFF00FF) + (p2 & 0xFF00FF)
+				+ (p3 & 0xFF00FF);
+		int g = (p0 & 0x00FF00) + (p1 & 0x00FF00) + (p2 & 0x00FF00)
+				+ (p3 & 0x00FF00);
+		// alpha too, for ALPHA_OVER previews
+		int a = (p0 >>> 24) + (p1 >>> 24) + (p2 >>> 24) + (p3 >>> 24);
+		return (a >>> 2) << 24 | (rb >>> 2 & 0xFF00FF) | (g >>> 2 & 0x00FF00);
+	}
+
+	/**
+	 * Blend the rows [loRow, hiRow) of a level and scale them up into the
+	 * image buffer, each pixel filling a square of 2^level pixels.
+	 */
+	@SuppressWarnings("serial")
+	private class LevelTask extends RecursiveAction {
+		private final long run;
+		private final int level, loRow, hiRow;
+
+		LevelTask(long run, int level, int loRow, int hiRow) {
+			this.run = run;
+			this.level = level;
+			this.loRow = loRow;
+			this.hiRow = hiRow;
+		}
+
+		@Override
+		protected void compute() {
+			if (cancelled(run))
+				return;
+			if (hiRow - loRow > ROWS) {
+				int middle = (loRow + hiRow) / 2;
+				invokeAll(new LevelTask(run, level, loRow, middle),
+						new LevelTask(run, level, middle, hiRow));
+				return;
+			}
+
+			int levelWidth = levelWidths[level];
+			int scale = 1 << level;
+			int[] blended = new int[levelWidth];
+			int fixedWeight = BlendKernel.fixedWeight(weight);
+			for (int y = loRow; y < hiRow; y++) {
+				mode.blendRow(pyramid1[level], y * levelWidth, pyramid2[level],
+						y * levelWidth, blended, 0, levelWidth, fixedWeight);
+
+				int row = y * scale;
+				int rowOffset = row * width;
+				for (int x = 0; x < levelWidth; x++)
+					for (int i = x * scale; i < Math.min((x + 1) * scale, width); i++)
+						imageBuffer[rowOffset + i] = blended[x];
+				for (int r = row + 1; r < Math.min(row + scale, height); r++)
+					System.arraycopy(imageBuffer, rowOffset, imageBuffer, r
+							* width, width);
+			}
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private class TileTask extends RecursiveAction {
+		private final long run;
+		private final Tiles tiles;
+		private final int loTile, hiTile;
+
+		TileTask(long run, Tiles tiles, int loTile, int hiTile) {
+			this.run = run;
+			this.tiles = tiles;
+			this.loTile = loTile;
+			this.hiTile = hiTile;
+		}
+
+		@Override
+		protected void compute() {
+			if (cancelled(run))
+				return;
+			if (hiTile - loTile > 1) {
+				int middle = (loTile + hiTile) / 2;
+				invokeAll(new TileTask(run, tiles, loTile, middle),
+						new TileTask(run, tiles, middle, hiTile));
+				return;
+			}
+			blendTiles(tiles, loTile, hiTile);
+		}
+	}
+}
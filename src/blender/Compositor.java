@@ -0,0 +1,211 @@
+package blender;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import util.StopWatch;
+
+/**
+ * Composites a stack of layers over a base image in one pass.<br/>
+ *
+ * Each layer is blended over the result of the ones below it with its own
+ * {@link BlendMode} and opacity, exactly as a chain of {@link Blender} runs
+ * would, each at weight 1 - opacity, feeding its output to the next. But
+ * where the chain reads and writes the whole image once per layer, here each
+ * task takes one tile, runs every row of it through all the layers in a
+ * scratch row that stays in the L1 cache, and writes the result once: the
+ * base and every layer are read once, and the output written once, whatever
+ * the number of layers. Tasks split the tiles as {@link BlenderForkJoin}
+ * does.
+ */
+
+public class Compositor implements Runnable {
+
+	/**
+	 * A layer of the stack: an image at least as large as the base, with the
+	 * mode and opacity it is blended with.
+	 */
+	public static final class Layer {
+		final int[] pixels;
+		final int stride;
+		final BlendMode mode;
+		// the share of the layers below, as in Blender
+		final int weight;
+
+		public Layer(BufferedImage image, BlendMode mode, double opacity) {
+			if (opacity < 0 || opacity > 1)
+				throw new IllegalArgumentException("opacity not in [0, 1]: "
+						+ opacity);
+			if (mode == BlendMode.ALPHA_OVER
+					&& !image.getColorModel().hasAlpha())
+				// as in Blender.setMode
+				mode = BlendMode.LINEAR;
+			this.pixels = ImagePixels.of(image);
+			this.stride = image.getWidth();
+			this.mode = mode;
+			this.weight = BlendKernel.fixedWeight(1 - opacity);
+		}
+	}
+
+	private final int[] base;
+	private final int width, height;
+	private final int[] imageBuffer;
+	private final List<Layer> layers = new ArrayList<Layer>();
+	private volatile ProgressSink progressSink;
+	private volatile Tiles tiles;
+	private volatile ForkJoinPool pool;
+	private long runtime;
+
+	public Compositor(BufferedImage base, int[] imageBuffer) {
+		this.base = ImagePixels.of(base);
+		this.width = base.getWidth();
+		this.height = base.getHeight();
+		this.imageBuffer = imageBuffer;
+	}
+
+	/**
+	 * Put <code>layer</code> on top of the stack for the following runs.
+	 */
+	public void addLayer(Layer layer) {
+		if (layer.stride < width || layer.pixels.length / layer.stride < height)
+			throw new IllegalArgumentException("layer of " + layer.stride
+					+ "x" + layer.pixels.length / layer.stride
+					+ " smaller than the base, " + width + "x" + height);
+		synchronized (layers) {
+			layers.add(layer);
+		}
+	}
+
+	/**
+	 * Put <code>image</code> on top of the stack, blended with
+	 * <code>mode</code> at <code>opacity</code>, in [0, 1].
+	 */
+	public void addLayer(BufferedImage image, BlendMode mode, double opacity) {
+		addLayer(new Layer(image, mode, opacity));
+	}
+
+	/**
+	 * Report the progress of the following runs to <code>sink</code>, or to
+	 * no one if it is null.
+	 */
+	public void setProgressSink(ProgressSink sink) {
+		this.progressSink = sink;
+	}
+
+	/**
+	 * As {@link Blender#setTileSize}.
+	 */
+	public void setTileSize(int tileWidth, int tileHeight) {
+		tiles = tileWidth == 0 && tileHeight == 0 ? null : new Tiles(width,
+				height, tileWidth, tileHeight);
+	}
+
+	/**
+	 * As {@link Blender#setPool}.
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	public long getRuntime() {
+		return runtime;
+	}
+
+	@Override
+	public void run() {
+		ProgressSink sink = progressSink;
+		StopWatch.start();
+		if (sink != null)
+			sink.blendStarted();
+		try {
+			process();
+		} finally {
+			if (sink != null)
+				sink.blendFinished();
+		}
+		StopWatch.stop();
+		runtime = StopWatch.getRuntime();
+	}
+
+	public void process() {
+		Layer[] layers;
+		synchronized (this.layers) {
+			layers = this.layers.toArray(new Layer[this.layers.size()]);
+		}
+		for (Layer layer : layers)
+			layer.mode.prepare(layer.weight);
+		Tiles tiles = this.tiles;
+		if (tiles == null)
+			this.tiles = tiles = Tiles.auto(width, height);
+		ForkJoinPool pool = this.pool;
+		if (pool == null)
+			pool = EnginePool.shared();
+		pool.invoke(new CompositorTask(layers, tiles, 0, tiles.count()));
+	}
+
+	@SuppressWarnings("serial")
+	private class CompositorTask extends RecursiveAction {
+		private final Layer[] layers;
+		private final Tiles tiles;
+		private final int loTile, hiTile;
+
+		CompositorTask(Layer[] layers, Tiles tiles, int loTile, int hiTile) {
+			this.layers = layers;
+			this.tiles = tiles;
+			this.loTile = loTile;
+			this.hiTile = hiTile;
+		}
+
+		@Override
+		protected void compute() {
+			if (hiTile - loTile > 1) {
+				int middle = (loTile + hiTile) / 2;
+				CompositorTask first = new CompositorTask(layers, tiles,
+						loTile, middle);
+				first.fork();
+				new CompositorTask(layers, tiles, middle, hiTile).compute();
+				first.join();
+				return;
+			}
+			compositeTile(layers, tiles, loTile);
+		}
+	}
+
+	private void compositeTile(Layer[] layers, Tiles tiles, int tile) {
+		int x = tiles.x(tile);
+		int y = tiles.y(tile);
+		int tileWidth = tiles.width(tile);
+		int tileHeight = tiles.height(tile);
+		int[] scratch = new int[tileWidth];
+		int last = layers.length - 1;
+
+		for (int row = y; row < y + tileHeight; row++) {
+			int offset = row * width + x;
+			if (layers.length == 0) {
+				System.arraycopy(base, offset, imageBuffer, offset, tileWidth);
+				continue;
+			}
+			// the blend modes read each pixel before writing it, so the
+			// scratch row can be both input and output; the top layer writes
+			// to the image buffer directly
+			int[] src = base;
+			int srcOffset = offset;
+			for (int i = 0; i <= last; i++) {
+				Layer layer = layers[i];
+				int[] dst = i == last ? imageBuffer : scratch;
+				int dstOffset = i == last ? offset : 0;
+				layer.mode.blendRow(src, srcOffset, layer.pixels, row
+						* layer.stride + x, dst, dstOffset, tileWidth,
+						layer.weight);
+				src = scratch;
+				srcOffset = 0;
+			}
+		}
+		ProgressSink sink = progressSink;
+		if (sink != null)
+			sink.regionDone(x, y, tileWidth, tileHeight);
+	}
+}
@@ -0,0 +1,334 @@
+package blender;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Generates the frames of a crossfade from one image to another and hands
+ * them to a {@link FrameConsumer}, such as a file writer or a video encoder,
+ * while the next frames are being blended.<br/>
+ *
+ * Frames are blended {@link #GROUP} at a time. Each fork-join task takes one
+ * tile and blends each of its rows at every weight of the group before moving
+ * on, so the two input rows are read from memory once per group rather than
+ * once per frame. Finished frames go through a bounded queue to the consumer
+ * threads; when they fall behind, blending waits, so at most the queue and a
+ * group of frames are in memory. Frame buffers come from an
+ * {@link IntBufferPool} sized for all of those and go back to it after the
+ * consumer returns, so a long sequence allocates its frames only once.
+ *
+ * Usage:
+ * <code>java blender.Crossfade img1 img2 frames outputDir [format]</code>
+ */
+
+public class Crossfade {
+
+	/** The frames blended in one pass over the inputs. */
+	public static final int GROUP = 8;
+
+	private static final int QUEUE_CAPACITY = 4;
+	private static final Frame END = new Frame(-1, null);
+
+	/**
+	 * Receives the finished frames, from the consumer threads of
+	 * {@link Crossfade#run}.
+	 */
+	public interface FrameConsumer {
+		/**
+		 * Take frame <code>index</code>: <code>width</code> x
+		 * <code>height</code> packed RGB pixels, row after row.
+		 * <code>pixels</code> is reused once this returns.
+		 */
+		void frame(int index, int[] pixels, int width, int height)
+				throws IOException;
+	}
+
+	private static class Frame {
+		final int index;
+		final int[] pixels;
+
+		Frame(int index, int[] pixels) {
+			this.index = index;
+			this.pixels = pixels;
+		}
+	}
+
+	private final int[] pixels1, pixels2;
+	private final int width, height, width2;
+	private final boolean alpha2;
+	private BlendMode mode = BlendMode.LINEAR;
+	private int consumers = 1;
+	private volatile ForkJoinPool pool;
+
+	/**
+	 * A crossfade from <code>img1</code> to <code>img2</code>, which must be
+	 * at least as large, over the size of <code>img1</code>.
+	 */
+	public Crossfade(BufferedImage img1, BufferedImage img2) {
+		if (img2.getWidth() < img1.getWidth()
+				|| img2.getHeight() < img1.getHeight())
+			throw new IllegalArgumentException("second image smaller than the first");
+		this.pixels1 = ImagePixels.of(img1);
+		this.pixels2 = ImagePixels.of(img2);
+		this.width = img1.getWidth();
+		this.height = img1.getHeight();
+		this.width2 = img2.getWidth();
+		this.alpha2 = img2.getColorModel().hasAlpha();
+	}
+
+	public void setMode(BlendMode mode) {
+		if (mode == BlendMode.ALPHA_OVER && !alpha2)
+			// as in Blender.setMode
+			mode = BlendMode.LINEAR;
+		this.mode = mode;
+	}
+
+	/**
+	 * Hand frames to <code>consumers</code> threads, 1 by default, which then
+	 * may see them out of order.
+	 */
+	public void setConsumers(int consumers) {
+		if (consumers <= 0)
+			throw new IllegalArgumentException("consumers not positive: "
+					+ consumers);
+		this.consumers = consumers;
+	}
+
+	/**
+	 * As {@link Blender#setPool}.
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * The share of the first image in frame <code>index</code> of
+	 * <code>frames</code>: the frames step evenly from one image to the other,
+	 * leaving both out.
+	 */
+	public static double weight(int index, int frames) {
+		return 1 - (index + 1) / (double) (frames + 1);
+	}
+
+	/**
+	 * Blend <code>frames</code> frames and wait until
+	 * <code>consumer</code> has taken them all. The first exception of the
+	 * consumer, checked or not, stops the run and is thrown here.
+	 */
+	public void run(int frames, final FrameConsumer consumer)
+			throws IOException, InterruptedException {
+		final BlockingQueue<Frame> queue = new ArrayBlockingQueue<Frame>(
+				QUEUE_CAPACITY);
+		// room for every frame in flight, so that none is allocated again
+		final IntBufferPool buffers = new IntBufferPool(GROUP + QUEUE_CAPACITY
+				+ consumers);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Thread[] threads = new Thread[consumers];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread("Crossfade consumer-" + i) {
+				@Override
+				public void run() {
+					try {
+						consume(queue, buffers, consumer, failure);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			};
+			threads[i].start();
+		}
+
+		ForkJoinPool pool = this.pool;
+		if (pool == null)
+			pool = EnginePool.shared();
+		Tiles tiles = Tiles.auto(width, height);
+		try {
+			for (int first = 0; first < frames && failure.get() == null; first += GROUP) {
+				int count = Math.min(GROUP, frames - first);
+				int[][] group = new int[count][];
+				int[] weights = new int[count];
+				for (int f = 0; f < count; f++) {
+					group[f] = buffers.acquire(width * height);
+					weights[f] = BlendKernel.fixedWeight(weight(first + f,
+							frames));
+					mode.prepare(weights[f]);
+				}
+				pool.invoke(new GroupTask(group, weights, tiles, 0, tiles
+						.count()));
+				for (int f = 0; f < count; f++)
+					if (!put(queue, new Frame(first + f, group[f]), threads))
+						break;
+			}
+		} finally {
+			finish(queue, threads);
+		}
+
+		Throwable e = failure.get();
+		if (e instanceof IOException)
+			throw (IOException) e;
+		if (e instanceof RuntimeException)
+			throw (RuntimeException) e;
+		if (e instanceof Error)
+			throw (Error) e;
+		if (e != null)
+			throw new RuntimeException(e);
+	}
+
+	/**
+	 * Put <code>frame</code> to <code>queue</code>, unless no consumer is
+	 * left to take it.
+	 */
+	private static boolean put(BlockingQueue<Frame> queue, Frame frame,
+			Thread[] consumers) throws InterruptedException {
+		while (!queue.offer(frame, 100, TimeUnit.MILLISECONDS))
+			if (!alive(consumers))
+				return false;
+		return true;
+	}
+
+	private static boolean alive(Thread[] threads) {
+		for (Thread thread : threads)
+			if (thread.isAlive())
+				return true;
+		return false;
+	}
+
+	/**
+	 * Tell the consumers the frames are over and wait for them. If this is
+	 * interrupted, so are they.
+	 */
+	private static void finish(BlockingQueue<Frame> queue, Thread[] consumers)
+			throws InterruptedException {
+		try {
+			for (int i = 0; i < consumers.length; i++)
+				if (!put(queue, END, consumers))
+					break;
+			for (Thread thread : consumers)
+				thread.join();
+		} catch (InterruptedException e) {
+			for (Thread thread : consumers)
+				thread.interrupt();
+			throw e;
+		}
+	}
+
+	private void consume(BlockingQueue<Frame> queue, IntBufferPool buffers,
+			FrameConsumer consumer, AtomicReference<Throwable> failure)
+			throws InterruptedException {
+		Frame frame;
+		while ((frame = queue.take()) != END) {
+			// after a failure, keep draining so that blending is not blocked
+			if (failure.get() == null)
+				try {
+					consumer.frame(frame.index, frame.pixels, width, height);
+				} catch (Throwable e) {
+					failure.compareAndSet(null, e);
+				}
+			buffers.release(frame.pixels);
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private class GroupTask extends RecursiveAction {
+		private final int[][] group;
+		private final int[] weights;
+		private final Tiles tiles;
+		private final int loTile, hiTile;
+
+		GroupTask(int[][] group, int[] weights, Tiles tiles, int loTile,
+				int hiTile) {
+			this.group = group;
+			this.weights = weights;
+			this.tiles = tiles;
+			this.loTile = loTile;
+			this.hiTile = hiTile;
+		}
+
+		@Override
+		protected void compute() {
+			if (hiTile - loTile > 1) {
+				int middle = (loTile + hiTile) / 2;
+				GroupTask first = new GroupTask(group, weights, tiles, loTile,
+						middle);
+				first.fork();
+				new GroupTask(group, weights, tiles, middle, hiTile).compute();
+				first.join();
+				return;
+			}
+
+			BlendMode mode = Crossfade.this.mode;
+			int x = tiles.x(loTile);
+			int y = tiles.y(loTile);
+			int tileWidth = tiles.width(loTile);
+			int tileHeight = tiles.height(loTile);
+			for (int row = y; row < y + tileHeight; row++) {
+				int offset = row * width + x;
+				int offset2 = row * width2 + x;
+				// both input rows stay in L1 across the frames of the group
+				for (int f = 0; f < group.length; f++)
+					mode.blendRow(pixels1, offset, pixels2, offset2, group[f],
+							offset, tileWidth, weights[f]);
+			}
+		}
+	}
+
+	/**
+	 * Writes each frame to <code>frame-NNNN.format</code> in a directory.
+	 */
+	public static FrameConsumer writer(final File directory,
+			final String format) {
+		directory.mkdirs();
+		final DirectColorModel colorModel = new DirectColorModel(24,
+				0xFF0000, 0x00FF00, 0x0000FF);
+		return new FrameConsumer() {
+			@Override
+			public void frame(int index, int[] pixels, int width, int height)
+					throws IOException {
+				// wrap the pooled frame without copying it
+				WritableRaster raster = Raster.createPackedRaster(
+						new DataBufferInt(pixels, width * height), width,
+						height, width, colorModel.getMasks(), null);
+				BufferedImage img = new BufferedImage(colorModel, raster,
+						false, null);
+				File file = new File(directory, String.format(
+						"frame-%04d.%s", index, format));
+				if (!ImageIO.write(img, format, file))
+					throw new IOException("no writer for " + format);
+			}
+		};
+	}
+
+	public static void main(String[] args) throws IOException,
+			InterruptedException {
+		if (args.length < 4) {
+			System.err.println("Usage: Crossfade img1 img2 frames outputDir [format]");
+			System.exit(1);
+		}
+		BufferedImage img1 = ImageIO.read(new File(args[0]));
+		BufferedImage img2 = ImageIO.read(new File(args[1]));
+		int frames = Integer.parseInt(args[2]);
+		Crossfade crossfade = new Crossfade(img1, img2);
+		// encoding is usually the slow part
+		crossfade.setConsumers(Runtime.getRuntime().availableProcessors());
+
+		long start = System.nanoTime();
+		crossfade.run(frames, writer(new File(args[3]), args.length > 4 ? args[4]
+				: "png"));
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("Wrote %d frames in %.2fs: %.2f frames/s\n", frames,
+				seconds, frames / seconds);
+	}
+}
@@ -0,0 +1,157 @@
+package blender;
+
+import java.awt.Rectangle;
+import java.awt.image.MemoryImageSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the regions of an image the workers have finished and tells the
+ * {@link MemoryImageSource} about them at most once a frame, from a single
+ * thread.<br/>
+ *
+ * Notifying the source of every row means thousands of consumer notifications
+ * and repaints per blend, made from all the workers at once. Here, workers
+ * only merge their region into a short list of dirty rectangles under a lock;
+ * every frame, the flusher takes the list and sends one
+ * <code>newPixels</code> per rectangle. Adjacent rows or tiles merge into
+ * one rectangle, and if the list grows beyond {@link #MAX_REGIONS}, it is
+ * replaced by its bounding box.
+ */
+
+public class DirtyRegions implements ProgressSink {
+
+	public static final int FRAMES_PER_SECOND = 60;
+	public static final int MAX_REGIONS = 16;
+
+	private static final ScheduledExecutorService flusher = Executors
+			.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "DirtyRegions flusher");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	private final MemoryImageSource imageSource;
+	private List<Rectangle> regions = new ArrayList<Rectangle>();
+	private ScheduledFuture<?> frames;
+	// blends in progress; a cancelled run may still be finishing
+	private int running;
+
+	public DirtyRegions(MemoryImageSource imageSource) {
+		this.imageSource = imageSource;
+	}
+
+	/**
+	 * Mark the region as finished. Called by the workers.
+	 */
+	@Override
+	public void regionDone(int x, int y, int width, int height) {
+		Rectangle region = new Rectangle(x, y, width, height);
+		synchronized (this) {
+			merge(regions, region);
+		}
+	}
+
+	/**
+	 * Merge <code>region</code> into <code>regions</code>, joining it with
+	 * every rectangle it overlaps or whose union with it covers no pixel
+	 * outside the two, so the rectangles stay disjoint and a flush sends no
+	 * pixel twice.
+	 */
+	static void merge(List<Rectangle> regions, Rectangle region) {
+		boolean merged;
+		do {
+			merged = false;
+			for (int i = 0; i < regions.size(); i++) {
+				Rectangle other = regions.get(i);
+				Rectangle union = region.union(other);
+				if (region.intersects(other)
+						|| area(union) <= area(region) + area(other)) {
+					regions.remove(i);
+					region = union;
+					merged = true;
+					break;
+				}
+			}
+		} while (merged);
+
+		regions.add(region);
+		if (regions.size() > MAX_REGIONS) {
+			Rectangle bounds = regions.get(0);
+			for (Rectangle other : regions)
+				bounds = bounds.union(other);
+			regions.clear();
+			regions.add(bounds);
+		}
+	}
+
+	private static long area(Rectangle r) {
+		return (long) r.width * r.height;
+	}
+
+	/**
+	 * Send the regions finished since the last flush to the image source.
+	 */
+	public void flush() {
+		List<Rectangle> dirty;
+		synchronized (this) {
+			if (regions.isEmpty())
+				return;
+			dirty = regions;
+			regions = new ArrayList<Rectangle>();
+		}
+		for (Rectangle r : dirty)
+			imageSource.newPixels(r.x, r.y, r.width, r.height, true);
+	}
+
+	/**
+	 * Flush every frame until the last running blend calls
+	 * {@link #blendFinished()}.
+	 */
+	@Override
+	public synchronized void blendStarted() {
+		if (running++ > 0)
+			return;
+		frames = flusher.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				flush();
+			}
+		}, 0, 1000000 / FRAMES_PER_SECOND, TimeUnit.MICROSECONDS);
+	}
+
+	/**
+	 * Stop the frames, unless another blend is still running, and flush what
+	 * is left, on the flusher thread.
+	 */
+	@Override
+	public void blendFinished() {
+		synchronized (this) {
+			if (--running == 0) {
+				frames.cancel(false);
+				frames = null;
+			}
+		}
+		try {
+			flusher.submit(new Runnable() {
+				@Override
+				public void run() {
+					flush();
+				}
+			}).get();
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package blender;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The long-lived fork-join pool the engines run on unless they are given
+ * another one with {@link Blender#setPool}.<br/>
+ *
+ * A new pool per run starts a worker thread per core and leaves them to
+ * time out: for a small image that costs more than the blend itself. The
+ * shared pool is created on first use, with one worker per core. Its workers
+ * are daemon threads, so it needs no shutdown for the JVM to exit; a server
+ * that wants its threads back calls {@link #shutdown}, and the next run
+ * creates a new pool.
+ */
+
+public final class EnginePool {
+
+	private static ForkJoinPool shared;
+
+	private EnginePool() {
+	}
+
+	/**
+	 * The shared pool, created if there is none or the last one was shut
+	 * down.
+	 */
+	public static synchronized ForkJoinPool shared() {
+		if (shared == null || shared.isShutdown())
+			shared = new ForkJoinPool();
+		return shared;
+	}
+
+	/**
+	 * Shut the shared pool down and wait up to <code>timeout</code>
+	 * milliseconds for the runs in progress to finish. Returns whether they
+	 * did.
+	 */
+	public static boolean shutdown(long timeout) throws InterruptedException {
+		ForkJoinPool pool;
+		synchronized (EnginePool.class) {
+			pool = shared;
+			shared = null;
+		}
+		if (pool == null)
+			return true;
+		pool.shutdown();
+		return pool.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+	}
+}
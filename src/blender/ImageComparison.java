@@ -0,0 +1,220 @@
+package blender;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * How far an image is from a reference: mean squared error and PSNR per
+ * channel and overall, and the SSIM of their luma, with the difference image
+ * on the side.<br/>
+ *
+ * {@link #of} runs on the {@link EnginePool#shared() shared pool}, one task
+ * per tile as in {@link ImageStatistics}, each summing into a comparison of
+ * its own that is merged on the way back. Every tile is read once from
+ * memory: the squared errors and the difference image in one loop, then the
+ * SSIM from the same tile, still in cache.<br/>
+ *
+ * SSIM is computed on luma, over non-overlapping 8x8 blocks, as in the
+ * original paper by Wang et al., rather than with a sliding Gaussian window;
+ * blocks cut by the right or bottom edge are left out. Tiles are rounded to
+ * multiples of 8 so that no block straddles two of them.
+ */
+
+public final class ImageComparison {
+
+	private static final int BLOCK = 8;
+	private static final double C1 = (0.01 * 255) * (0.01 * 255);
+	private static final double C2 = (0.03 * 255) * (0.03 * 255);
+
+	private long pixels;
+	// sums of squared differences, per channel
+	private final long[] squaredErrors = new long[3];
+	private double ssimSum;
+	private long blocks;
+
+	private ImageComparison() {
+	}
+
+	/**
+	 * Compare <code>img</code> with <code>reference</code>, which must be at
+	 * least as large, over the size of <code>img</code>. If
+	 * <code>difference</code> is not null, the absolute difference of each
+	 * channel is written to it, <code>img.getWidth()</code> pixels per row.
+	 */
+	public static ImageComparison of(BufferedImage img,
+			BufferedImage reference, int[] difference) {
+		return of(img, reference, difference, EnginePool.shared());
+	}
+
+	public static ImageComparison of(BufferedImage img,
+			BufferedImage reference, int[] difference, ForkJoinPool pool) {
+		int width = img.getWidth();
+		int height = img.getHeight();
+		if (reference.getWidth() < width || reference.getHeight() < height)
+			throw new IllegalArgumentException("reference of "
+					+ reference.getWidth() + "x" + reference.getHeight()
+					+ " smaller than the image, " + width + "x" + height);
+		Tiles auto = Tiles.auto(width, height);
+		Tiles tiles = new Tiles(width, height, roundUp(auto.tileWidth()),
+				roundUp(auto.tileHeight()));
+		return pool.invoke(new ComparisonTask(ImagePixels.of(img), width,
+				ImagePixels.of(reference), reference.getWidth(), difference,
+				tiles, 0, tiles.count()));
+	}
+
+	private static int roundUp(int size) {
+		return (size + BLOCK - 1) / BLOCK * BLOCK;
+	}
+
+	@SuppressWarnings("serial")
+	private static class ComparisonTask extends RecursiveTask<ImageComparison> {
+		private final int[] pixels1, pixels2, difference;
+		private final int width1, width2;
+		private final Tiles tiles;
+		private final int loTile, hiTile;
+
+		ComparisonTask(int[] pixels1, int width1, int[] pixels2, int width2,
+				int[] difference, Tiles tiles, int loTile, int hiTile) {
+			this.pixels1 = pixels1;
+			this.width1 = width1;
+			this.pixels2 = pixels2;
+			this.width2 = width2;
+			this.difference = difference;
+			this.tiles = tiles;
+			this.loTile = loTile;
+			this.hiTile = hiTile;
+		}
+
+		@Override
+		protected ImageComparison compute() {
+			if (hiTile - loTile > 1) {
+				int middle = (loTile + hiTile) / 2;
+				ComparisonTask first = new ComparisonTask(pixels1, width1,
+						pixels2, width2, difference, tiles, loTile, middle);
+				first.fork();
+				ImageComparison comparison = new ComparisonTask(pixels1,
+						width1, pixels2, width2, difference, tiles, middle,
+						hiTile).compute();
+				return comparison.merge(first.join());
+			}
+
+			ImageComparison comparison = new ImageComparison();
+			int x = tiles.x(loTile);
+			int y = tiles.y(loTile);
+			int tileWidth = tiles.width(loTile);
+			int tileHeight = tiles.height(loTile);
+			for (int row = y; row < y + tileHeight; row++)
+				comparison.compareRow(pixels1, row * width1 + x, pixels2, row
+						* width2 + x, difference, tileWidth);
+			comparison.pixels = (long) tileWidth * tileHeight;
+
+			for (int by = y; by + BLOCK <= y + tileHeight; by += BLOCK)
+				for (int bx = x; bx + BLOCK <= x + tileWidth; bx += BLOCK)
+					comparison.compareBlock(pixels1, by * width1 + bx, width1,
+							pixels2, by * width2 + bx, width2);
+			return comparison;
+		}
+	}
+
+	private void compareRow(int[] pixels1, int offset1, int[] pixels2,
+			int offset2, int[] difference, int length) {
+		// a row of squared channel differences fits an int up to 33025
+		// pixels, more than the widest tile
+		int red = 0, green = 0, blue = 0;
+		for (int i = 0; i < length; i++) {
+			int rgb1 = pixels1[offset1 + i];
+			int rgb2 = pixels2[offset2 + i];
+			int r = ((rgb1 >> 16) & 255) - ((rgb2 >> 16) & 255);
+			int g = ((rgb1 >> 8) & 255) - ((rgb2 >> 8) & 255);
+			int b = (rgb1 & 255) - (rgb2 & 255);
+			red += r * r;
+			green += g * g;
+			blue += b * b;
+			if (difference != null)
+				difference[offset1 + i] = 0xFF000000 | Math.abs(r) << 16
+						| Math.abs(g) << 8 | Math.abs(b);
+		}
+		squaredErrors[ImageStatistics.RED] += red;
+		squaredErrors[ImageStatistics.GREEN] += green;
+		squaredErrors[ImageStatistics.BLUE] += blue;
+	}
+
+	private void compareBlock(int[] pixels1, int offset1, int width1,
+			int[] pixels2, int offset2, int width2) {
+		int sum1 = 0, sum2 = 0, squares1 = 0, squares2 = 0, products = 0;
+		for (int row = 0; row < BLOCK; row++)
+			for (int i = 0; i < BLOCK; i++) {
+				int y1 = luma(pixels1[offset1 + row * width1 + i]);
+				int y2 = luma(pixels2[offset2 + row * width2 + i]);
+				sum1 += y1;
+				sum2 += y2;
+				squares1 += y1 * y1;
+				squares2 += y2 * y2;
+				products += y1 * y2;
+			}
+		double n = BLOCK * BLOCK;
+		double mean1 = sum1 / n, mean2 = sum2 / n;
+		double variance1 = squares1 / n - mean1 * mean1;
+		double variance2 = squares2 / n - mean2 * mean2;
+		double covariance = products / n - mean1 * mean2;
+		ssimSum += (2 * mean1 * mean2 + C1) * (2 * covariance + C2)
+				/ ((mean1 * mean1 + mean2 * mean2 + C1)
+						* (variance1 + variance2 + C2));
+		blocks++;
+	}
+
+	private static int luma(int rgb) {
+		// ITU-R BT.601 weights in 1/256ths
+		return (77 * ((rgb >> 16) & 255) + 150 * ((rgb >> 8) & 255) + 29
+				* (rgb & 255) + 128) >> 8;
+	}
+
+	ImageComparison merge(ImageComparison other) {
+		pixels += other.pixels;
+		for (int c = 0; c < 3; c++)
+			squaredErrors[c] += other.squaredErrors[c];
+		ssimSum += other.ssimSum;
+		blocks += other.blocks;
+		return this;
+	}
+
+	/**
+	 * The mean squared error of <code>channel</code>, see
+	 * {@link ImageStatistics#RED}.
+	 */
+	public double mse(int channel) {
+		return (double) squaredErrors[channel] / pixels;
+	}
+
+	/**
+	 * The mean squared error over all three channels.
+	 */
+	public double mse() {
+		return (double) (squaredErrors[0] + squaredErrors[1] + squaredErrors[2])
+				/ (3 * pixels);
+	}
+
+	/**
+	 * The peak signal-to-noise ratio in dB, infinite for identical images.
+	 */
+	public double psnr() {
+		return psnr(mse());
+	}
+
+	public double psnr(int channel) {
+		return psnr(mse(channel));
+	}
+
+	private static double psnr(double mse) {
+		return 10 * Math.log10(255 * 255 / mse);
+	}
+
+	/**
+	 * The mean SSIM of the 8x8 blocks, 1 for identical images, or NaN if the
+	 * image is smaller than a block.
+	 */
+	public double ssim() {
+		return ssimSum / blocks;
+	}
+}
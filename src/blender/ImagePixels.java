@@ -0,0 +1,59 @@
+package blender;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+
+/**
+ * Direct access to the packed RGB pixels of a {@link BufferedImage}.
+ */
+
+public final class ImagePixels {
+
+	private ImagePixels() {
+	}
+
+	/**
+	 * Return the pixels of <code>img</code> as packed RGB ints, row after row,
+	 * <code>img.getWidth()</code> pixels per row. The alpha byte is undefined.<br/>
+	 *
+	 * For <code>TYPE_INT_RGB</code> and <code>TYPE_INT_ARGB</code> images that
+	 * own their whole buffer this is the backing array itself, so no pixel is
+	 * copied or converted. Any other image is converted once, up front, into a
+	 * new array; later changes to the image are not reflected in it.
+	 */
+	public static int[] of(BufferedImage img) {
+		int[] pixels = backingArray(img);
+		if (pixels != null)
+			return pixels;
+		int width = img.getWidth();
+		int height = img.getHeight();
+		return img.getRGB(0, 0, width, height, null, 0, width);
+	}
+
+	/**
+	 * Return the backing array of <code>img</code> if it is laid out exactly
+	 * like {@link #of(BufferedImage)}, <code>null</code> otherwise.
+	 */
+	static int[] backingArray(BufferedImage img) {
+		if (img.getType() != BufferedImage.TYPE_INT_RGB
+				&& img.getType() != BufferedImage.TYPE_INT_ARGB)
+			return null;
+		Raster raster = img.getRaster();
+		if (!(raster.getDataBuffer() instanceof DataBufferInt)
+				|| !(raster.getSampleModel() instanceof SinglePixelPackedSampleModel))
+			return null;
+		DataBufferInt buffer = (DataBufferInt) raster.getDataBuffer();
+		SinglePixelPackedSampleModel sampleModel = (SinglePixelPackedSampleModel) raster
+				.getSampleModel();
+		// not a sub-image of a larger raster
+		if (buffer.getNumBanks() != 1 || buffer.getOffset() != 0
+				|| raster.getSampleModelTranslateX() != 0
+				|| raster.getSampleModelTranslateY() != 0
+				|| sampleModel.getScanlineStride() != img.getWidth()
+				|| buffer.getSize() < img.getWidth() * img.getHeight())
+			return null;
+		return buffer.getData();
+	}
+}
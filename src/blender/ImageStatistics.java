@@ -0,0 +1,142 @@
+package blender;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Per-channel histograms of an image, and the minimum, maximum and mean
+ * derived from them.<br/>
+ *
+ * {@link #of} computes them on the {@link EnginePool#shared() shared pool}:
+ * tasks split the {@link Tiles} of the image as {@link BlenderForkJoin} does,
+ * each tile is counted into histograms of its own, and the partial results
+ * are merged up the same tree on the way back, so no two threads ever
+ * increment the same counter.
+ */
+
+public final class ImageStatistics {
+
+	public static final int RED = 0, GREEN = 1, BLUE = 2;
+
+	// channel * 256 + value -> number of pixels
+	private final long[] histograms = new long[3 * 256];
+	private long pixels;
+
+	private ImageStatistics() {
+	}
+
+	/**
+	 * The statistics of <code>img</code>.
+	 */
+	public static ImageStatistics of(BufferedImage img) {
+		return of(img, EnginePool.shared());
+	}
+
+	public static ImageStatistics of(BufferedImage img, ForkJoinPool pool) {
+		int width = img.getWidth();
+		Tiles tiles = Tiles.auto(width, img.getHeight());
+		return pool.invoke(new StatisticsTask(ImagePixels.of(img), width,
+				tiles, 0, tiles.count()));
+	}
+
+	@SuppressWarnings("serial")
+	private static class StatisticsTask extends RecursiveTask<ImageStatistics> {
+		private final int[] pixels;
+		private final int width;
+		private final Tiles tiles;
+		private final int loTile, hiTile;
+
+		StatisticsTask(int[] pixels, int width, Tiles tiles, int loTile,
+				int hiTile) {
+			this.pixels = pixels;
+			this.width = width;
+			this.tiles = tiles;
+			this.loTile = loTile;
+			this.hiTile = hiTile;
+		}
+
+		@Override
+		protected ImageStatistics compute() {
+			if (hiTile - loTile > 1) {
+				int middle = (loTile + hiTile) / 2;
+				StatisticsTask first = new StatisticsTask(pixels, width, tiles,
+						loTile, middle);
+				first.fork();
+				ImageStatistics statistics = new StatisticsTask(pixels, width,
+						tiles, middle, hiTile).compute();
+				return statistics.merge(first.join());
+			}
+
+			ImageStatistics statistics = new ImageStatistics();
+			// a tile has fewer than 2^31 pixels, so int counters do, and
+			// incrementing them is cheaper
+			int[] counts = new int[3 * 256];
+			int x = tiles.x(loTile);
+			int y = tiles.y(loTile);
+			int tileWidth = tiles.width(loTile);
+			int tileHeight = tiles.height(loTile);
+			for (int row = y; row < y + tileHeight; row++) {
+				int offset = row * width + x;
+				for (int i = offset; i < offset + tileWidth; i++) {
+					int rgb = pixels[i];
+					counts[(rgb >> 16) & 255]++;
+					counts[256 + ((rgb >> 8) & 255)]++;
+					counts[512 + (rgb & 255)]++;
+				}
+			}
+			for (int i = 0; i < counts.length; i++)
+				statistics.histograms[i] = counts[i];
+			statistics.pixels = (long) tileWidth * tileHeight;
+			return statistics;
+		}
+	}
+
+	ImageStatistics merge(ImageStatistics other) {
+		for (int i = 0; i < histograms.length; i++)
+			histograms[i] += other.histograms[i];
+		pixels += other.pixels;
+		return this;
+	}
+
+	public long pixels() {
+		return pixels;
+	}
+
+	/**
+	 * The number of pixels with each value, from 0 to 255, of
+	 * <code>channel</code>: {@link #RED}, {@link #GREEN} or {@link #BLUE}.
+	 */
+	public long[] histogram(int channel) {
+		long[] histogram = new long[256];
+		System.arraycopy(histograms, channel * 256, histogram, 0, 256);
+		return histogram;
+	}
+
+	/**
+	 * The smallest value of <code>channel</code>, or -1 for an empty image.
+	 */
+	public int min(int channel) {
+		for (int v = 0; v < 256; v++)
+			if (histograms[channel * 256 + v] != 0)
+				return v;
+		return -1;
+	}
+
+	/**
+	 * The largest value of <code>channel</code>, or -1 for an empty image.
+	 */
+	public int max(int channel) {
+		for (int v = 255; v >= 0; v--)
+			if (histograms[channel * 256 + v] != 0)
+				return v;
+		return -1;
+	}
+
+	public double mean(int channel) {
+		long sum = 0;
+		for (int v = 0; v < 256; v++)
+			sum += v * histograms[channel * 256 + v];
+		return (double) sum / pixels;
+	}
+}
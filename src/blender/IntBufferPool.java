@@ -0,0 +1,54 @@
+package blender;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A pool of <code>int[]</code> pixel buffers, so that pipelines working on
+ * images of the same size reuse their rasters instead of allocating new ones
+ * for every image. Buffers are pooled by exact length; at most
+ * <code>maxPerSize</code> free buffers of each length are kept.
+ */
+
+public class IntBufferPool {
+	private final ConcurrentHashMap<Integer, Queue<int[]>> free = new ConcurrentHashMap<Integer, Queue<int[]>>();
+	private final int maxPerSize;
+
+	public IntBufferPool(int maxPerSize) {
+		this.maxPerSize = maxPerSize;
+	}
+
+	/**
+	 * Return a free buffer of exactly <code>length</code> ints, with arbitrary
+	 * contents.
+	 */
+	public int[] acquire(int length) {
+		int[] buffer = queue(length).poll();
+		return buffer != null ? buffer : new int[length];
+	}
+
+	/**
+	 * Give <code>buffer</code> back to the pool. It must not be used
+	 * afterwards.
+	 */
+	public void release(int[] buffer) {
+		if (buffer == null)
+			return;
+		Queue<int[]> queue = queue(buffer.length);
+		// the size check is racy, so the bound is approximate
+		if (queue.size() < maxPerSize)
+			queue.offer(buffer);
+	}
+
+	private Queue<int[]> queue(int length) {
+		Queue<int[]> queue = free.get(length);
+		if (queue == null) {
+			Queue<int[]> newQueue = new ConcurrentLinkedQueue<int[]>();
+			queue = free.putIfAbsent(length, newQueue);
+			if (queue == null)
+				queue = newQueue;
+		}
+		return queue;
+	}
+}
@@ -0,0 +1,133 @@
+package blender;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Blending in linear light, through lookup tables.<br/>
+ *
+ * sRGB channel values are gamma-encoded, so averaging them directly gives
+ * midtones that are too dark. Here each channel is decoded to a 16-bit linear
+ * intensity, the intensities are blended with the fixed-point weight, and the
+ * result is encoded back to 8 bits. Both conversions are table lookups
+ * instead of <code>Math.pow</code>: 256 chars to decode and 4096 bytes,
+ * indexed by the top 12 bits of the intensity, to encode. Every 8-bit value
+ * survives the round trip unchanged.<br/>
+ *
+ * Those are still nine lookups per pixel, which makes the row loop about
+ * twice as slow as {@link BlendKernel}. Since the weight is fixed for a
+ * whole blend, the rows use a 64 KiB table of the whole decode, mix and
+ * encode for each pair of channel values instead, built from the small
+ * tables: three lookups per pixel. Such a table does not fit in L1, but the
+ * rows are still faster with it: on 4 megapixels of random values, about
+ * 15 ms against 21 ms with the nine lookups, and 10 ms in {@link BlendKernel}.
+ * Building one takes 65,536 blends, about as long as blending a 256x256
+ * image, so the tables are kept: callers alternating weights, like the frames
+ * of a {@link Crossfade} or the layers of a {@link Compositor}, build each
+ * table once. At most {@link #MAX_TABLES} of them, 1 MiB, are kept; beyond
+ * that the oldest one is dropped.
+ */
+
+final class LinearLight {
+
+	/** The most mix tables kept at a time. */
+	static final int MAX_TABLES = 16;
+
+	private static final int ENCODE_BITS = 12;
+	private static final int ENCODE_SHIFT = 16 - ENCODE_BITS;
+
+	/** sRGB value -> linear intensity in [0, 65535] */
+	static final char[] TO_LINEAR = new char[256];
+
+	/** linear intensity >>> 4 -> sRGB value */
+	static final byte[] TO_SRGB = new byte[1 << ENCODE_BITS];
+
+	static {
+		for (int v = 0; v < TO_LINEAR.length; v++)
+			TO_LINEAR[v] = (char) Math.round(decode(v / 255.0) * 65535);
+		for (int i = 0; i < TO_SRGB.length; i++)
+			// the middle of the intensities i stands for
+			TO_SRGB[i] = (byte) Math.round(encode((i + 0.5) / TO_SRGB.length) * 255);
+	}
+
+	// fixed-point weight -> mix table, built on first use; read without a
+	// lock
+	private static final AtomicReferenceArray<byte[]> tables = new AtomicReferenceArray<byte[]>(
+			BlendKernel.ONE + 1);
+	// the weights with a table, oldest first; guarded by itself
+	private static final ArrayDeque<Integer> kept = new ArrayDeque<Integer>();
+
+	private LinearLight() {
+	}
+
+	/**
+	 * The blend of every pair of channel values at <code>weight</code>:
+	 * (channel of src1 << 8 | channel of src2) -> blended channel.
+	 */
+	private static byte[] mix(int weight) {
+		byte[] table = new byte[256 * 256];
+		int weight2 = BlendKernel.ONE - weight;
+		for (int a = 0; a < 256; a++)
+			for (int b = 0; b < 256; b++)
+				table[a << 8 | b] = TO_SRGB[blend(a, b, weight, weight2)];
+		return table;
+	}
+
+	/**
+	 * The encode table index of the blend of the channel values a and b.
+	 */
+	private static int blend(int a, int b, int weight, int weight2) {
+		// 16-bit intensities times weights of at most 256 fit in 24 bits, so
+		// shifting by 8 + 4 leaves the 12-bit table index
+		return (TO_LINEAR[a] * weight + TO_LINEAR[b] * weight2) >>> (8 + ENCODE_SHIFT);
+	}
+
+	/**
+	 * The mix table of <code>weight</code>, built if it is the first use.
+	 */
+	static byte[] table(int weight) {
+		byte[] table = tables.get(weight);
+		if (table != null)
+			return table;
+		// racing threads may build the same table twice; the first one
+		// stored is kept. A dropped table stays usable by the rows that
+		// already have it.
+		table = mix(weight);
+		synchronized (kept) {
+			byte[] stored = tables.get(weight);
+			if (stored != null)
+				return stored;
+			if (kept.size() == MAX_TABLES)
+				tables.set(kept.removeFirst(), null);
+			tables.set(weight, table);
+			kept.addLast(weight);
+		}
+		return table;
+	}
+
+	private static double decode(double c) {
+		return c <= 0.04045 ? c / 12.92 : Math.pow((c + 0.055) / 1.055, 2.4);
+	}
+
+	private static double encode(double l) {
+		return l <= 0.0031308 ? 12.92 * l : 1.055 * Math.pow(l, 1 / 2.4) - 0.055;
+	}
+
+	/**
+	 * Blend <code>length</code> pixels of <code>src1</code> and
+	 * <code>src2</code> into <code>dst</code> in linear light, giving the
+	 * fixed-point <code>weight</code> to <code>src1</code>.
+	 */
+	static void blendRow(int[] src1, int offset1, int[] src2, int offset2,
+			int[] dst, int dstOffset, int length, int weight) {
+		byte[] table = table(weight);
+		for (int i = 0; i < length; i++) {
+			int rgb1 = src1[offset1 + i];
+			int rgb2 = src2[offset2 + i];
+			int r = table[(rgb1 >> 8) & 0xFF00 | (rgb2 >> 16) & 255] & 255;
+			int g = table[rgb1 & 0xFF00 | (rgb2 >> 8) & 255] & 255;
+			int b = table[(rgb1 & 255) << 8 | rgb2 & 255] & 255;
+			dst[dstOffset + i] = 0xFF000000 | r << 16 | g << 8 | b;
+		}
+	}
+}
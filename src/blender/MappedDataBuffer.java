@@ -0,0 +1,165 @@
+package blender;
+
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@link DataBuffer} of byte, short or int samples kept in a memory-mapped
+ * temporary file rather than on the heap, so that an image reader can decode
+ * a whole image larger than the heap into it in one pass. The file is deleted
+ * when the buffer is closed.<br/>
+ *
+ * Every sample goes through {@link #getElem} and {@link #setElem}, which is
+ * slower than an array, but takes the same time for every row, wherever it
+ * is in the image.
+ */
+
+final class MappedDataBuffer extends DataBuffer implements Closeable {
+
+	// files are mapped in chunks of 1 GiB, as a mapping is at most 2 GiB
+	private static final int CHUNK_SHIFT = 30;
+	private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+	private final FileChannel channel;
+	private final ByteBuffer[] chunks;
+	private final int elementShift;
+
+	private MappedDataBuffer(File file, int dataType, int size, int numBanks)
+			throws IOException {
+		super(dataType, size, numBanks);
+		switch (dataType) {
+		case TYPE_BYTE:
+			elementShift = 0;
+			break;
+		case TYPE_USHORT:
+		case TYPE_SHORT:
+			elementShift = 1;
+			break;
+		case TYPE_INT:
+			elementShift = 2;
+			break;
+		default:
+			throw new IOException("unsupported sample type " + dataType);
+		}
+
+		long bytes = (long) size * numBanks << elementShift;
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+		try {
+			chunks = new ByteBuffer[(int) ((bytes + CHUNK_MASK) >>> CHUNK_SHIFT)];
+			for (int i = 0; i < chunks.length; i++) {
+				long start = (long) i << CHUNK_SHIFT;
+				chunks[i] = channel.map(MapMode.READ_WRITE, start,
+						Math.min(CHUNK_MASK + 1, bytes - start)).order(
+						ByteOrder.nativeOrder());
+			}
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * A buffer in <code>file</code> large enough for an image laid out by
+	 * <code>sampleModel</code>, if it has at most {@link Integer#MAX_VALUE}
+	 * samples per bank.
+	 */
+	static MappedDataBuffer create(File file, SampleModel sampleModel)
+			throws IOException {
+		long size = size(sampleModel);
+		if (size > Integer.MAX_VALUE)
+			throw new IOException("image too large for a raster: "
+					+ sampleModel.getWidth() + "x" + sampleModel.getHeight());
+		return new MappedDataBuffer(file, sampleModel.getDataType(),
+				(int) size, banks(sampleModel));
+	}
+
+	/**
+	 * The number of samples per bank of an image laid out by
+	 * <code>sampleModel</code>.
+	 */
+	static long size(SampleModel sampleModel) throws IOException {
+		int width = sampleModel.getWidth();
+		int height = sampleModel.getHeight();
+		if (sampleModel instanceof ComponentSampleModel) {
+			ComponentSampleModel model = (ComponentSampleModel) sampleModel;
+			int maxOffset = 0;
+			for (int offset : model.getBandOffsets())
+				maxOffset = Math.max(maxOffset, offset);
+			return (long) model.getScanlineStride() * (height - 1)
+					+ (long) model.getPixelStride() * (width - 1) + maxOffset
+					+ 1;
+		} else if (sampleModel instanceof SinglePixelPackedSampleModel)
+			return (long) ((SinglePixelPackedSampleModel) sampleModel)
+					.getScanlineStride() * (height - 1) + width;
+		else if (sampleModel instanceof MultiPixelPackedSampleModel)
+			return (long) ((MultiPixelPackedSampleModel) sampleModel)
+					.getScanlineStride() * height;
+		else
+			throw new IOException("unsupported sample model "
+					+ sampleModel.getClass().getName());
+	}
+
+	private static int banks(SampleModel sampleModel) {
+		int banks = 1;
+		if (sampleModel instanceof ComponentSampleModel)
+			for (int bank : ((ComponentSampleModel) sampleModel)
+					.getBankIndices())
+				banks = Math.max(banks, bank + 1);
+		return banks;
+	}
+
+	private ByteBuffer chunk(long offset) {
+		return chunks[(int) (offset >>> CHUNK_SHIFT)];
+	}
+
+	@Override
+	public int getElem(int bank, int i) {
+		long offset = ((long) bank * size + i) << elementShift;
+		int position = (int) (offset & CHUNK_MASK);
+		switch (dataType) {
+		case TYPE_BYTE:
+			return chunk(offset).get(position) & 0xFF;
+		case TYPE_USHORT:
+			return chunk(offset).getShort(position) & 0xFFFF;
+		case TYPE_SHORT:
+			return chunk(offset).getShort(position);
+		default:
+			return chunk(offset).getInt(position);
+		}
+	}
+
+	@Override
+	public void setElem(int bank, int i, int value) {
+		long offset = ((long) bank * size + i) << elementShift;
+		int position = (int) (offset & CHUNK_MASK);
+		switch (dataType) {
+		case TYPE_BYTE:
+			chunk(offset).put(position, (byte) value);
+			break;
+		case TYPE_USHORT:
+		case TYPE_SHORT:
+			chunk(offset).putShort(position, (short) value);
+			break;
+		default:
+			chunk(offset).putInt(position, value);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
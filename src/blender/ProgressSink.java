@@ -0,0 +1,26 @@
+package blender;
+
+/**
+ * Follows the progress of a {@link Blender}.<br/>
+ *
+ * {@link #regionDone} is called from the blender's worker threads, often
+ * concurrently, so it should be quick and thread-safe.
+ */
+
+public interface ProgressSink {
+
+	/**
+	 * A run of {@link Blender#run()} is starting.
+	 */
+	void blendStarted();
+
+	/**
+	 * The pixels of the region are final in the blender's image buffer.
+	 */
+	void regionDone(int x, int y, int width, int height);
+
+	/**
+	 * The run has finished, normally or not.
+	 */
+	void blendFinished();
+}
@@ -0,0 +1,353 @@
+package blender;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * An image stored as raw pixels in a file, read and written in bands of rows
+ * through memory mappings, so it can be larger than the heap.<br/>
+ *
+ * The format is a header of four little-endian ints, {@link #MAGIC}, the
+ * width, the height and 0, followed by the width * height pixels as
+ * little-endian 0xAARRGGBB ints, row by row.<br/>
+ *
+ * Usage, to convert between raw and standard formats:
+ * <code>java blender.RawImage source destination</code>, where a destination
+ * ending in <code>.raw</code> is written as a raw image, one ending in
+ * <code>.ppm</code> is streamed as a binary PPM, and any other is written by
+ * ImageIO, if the image fits the heap.
+ */
+
+public class RawImage implements Closeable {
+
+	/** "RAW1" */
+	public static final int MAGIC = 0x31574152;
+
+	private static final int HEADER_SIZE = 16;
+
+	private final FileChannel channel;
+	private final boolean writable;
+	private final int width, height;
+
+	private RawImage(FileChannel channel, boolean writable, int width,
+			int height) {
+		this.channel = channel;
+		this.writable = writable;
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * Create <code>file</code>, or replace it, as a raw image of the given
+	 * size, open for reading and writing.
+	 */
+	public static RawImage create(File file, int width, int height)
+			throws IOException {
+		if (width <= 0 || height <= 0)
+			throw new IllegalArgumentException("bad size: " + width + "x"
+					+ height);
+		FileChannel channel = FileChannel.open(file.toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(
+				ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC).putInt(width).putInt(height).putInt(0).flip();
+		while (header.hasRemaining())
+			channel.write(header);
+		// sparse until the bands are written
+		channel.write(ByteBuffer.allocate(1), HEADER_SIZE + 4L * width
+				* height - 1);
+		return new RawImage(channel, true, width, height);
+	}
+
+	/**
+	 * Open the raw image <code>file</code> for reading.
+	 */
+	public static RawImage open(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(),
+				StandardOpenOption.READ);
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(
+				ByteOrder.LITTLE_ENDIAN);
+		while (header.hasRemaining())
+			if (channel.read(header) < 0)
+				break;
+		header.flip();
+		if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+			channel.close();
+			throw new IOException(file + " is not a raw image");
+		}
+		int width = header.getInt();
+		int height = header.getInt();
+		if (width <= 0 || height <= 0
+				|| channel.size() < HEADER_SIZE + 4L * width * height) {
+			channel.close();
+			throw new IOException(file + " is truncated or corrupt");
+		}
+		return new RawImage(channel, false, width, height);
+	}
+
+	public int width() {
+		return width;
+	}
+
+	public int height() {
+		return height;
+	}
+
+	/**
+	 * Map the rows [loRow, hiRow). The mapping lives outside the heap and is
+	 * released once the buffer is garbage.
+	 */
+	public IntBuffer map(int loRow, int hiRow) throws IOException {
+		if (loRow < 0 || hiRow > height || loRow > hiRow)
+			throw new IndexOutOfBoundsException("rows " + loRow + " to "
+					+ hiRow + " of " + height);
+		return channel.map(writable ? MapMode.READ_WRITE : MapMode.READ_ONLY,
+				HEADER_SIZE + 4L * width * loRow,
+				4L * width * (hiRow - loRow)).order(ByteOrder.LITTLE_ENDIAN)
+				.asIntBuffer();
+	}
+
+	/**
+	 * Copy the rows [loRow, hiRow) to the start of <code>pixels</code>.
+	 */
+	public void readRows(int loRow, int hiRow, int[] pixels)
+			throws IOException {
+		map(loRow, hiRow).get(pixels, 0, (hiRow - loRow) * width);
+	}
+
+	/**
+	 * Copy the start of <code>pixels</code> to the rows [loRow, hiRow).
+	 */
+	public void writeRows(int loRow, int hiRow, int[] pixels)
+			throws IOException {
+		map(loRow, hiRow).put(pixels, 0, (hiRow - loRow) * width);
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * The number of rows of a band of about <code>bytes</code> bytes of pixels,
+	 * at least one.
+	 */
+	static int bandRows(int width, int bytes) {
+		return Math.max(1, bytes / (4 * width));
+	}
+
+	/**
+	 * Convert <code>image</code>, in any format ImageIO reads, to the raw
+	 * image <code>raw</code>.<br/>
+	 *
+	 * Readers of formats like PNG and JPEG decode from the top of the image
+	 * for every source region, so reading it region by region would take time
+	 * quadratic in its height. Instead, the image is decoded in one pass into
+	 * a {@link MappedDataBuffer} next to <code>raw</code>, in the reader's own
+	 * sample layout, and then converted to RGB one band of rows at a time.
+	 * A raster holds at most {@link Integer#MAX_VALUE} samples per bank, e.g.
+	 * not the three bytes per pixel of a gigapixel image; such an image is
+	 * read region by region after all, which is slow but needs no raster of
+	 * the whole image.
+	 */
+	public static void fromImage(File image, File raw, int bandBytes)
+			throws IOException {
+		fromImage(image, raw, bandBytes, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * As {@link #fromImage(File, File, int)}, reading by regions the images of
+	 * more than <code>maxSamples</code> samples per bank.
+	 */
+	static void fromImage(File image, File raw, int bandBytes, long maxSamples)
+			throws IOException {
+		ImageInputStream input = ImageIO.createImageInputStream(image);
+		if (input == null)
+			throw new IOException("cannot read " + image);
+		try {
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+			if (!readers.hasNext())
+				throw new IOException("unknown image format: " + image);
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(input);
+				int width = reader.getWidth(0);
+				int height = reader.getHeight(0);
+				int bandRows = bandRows(width, bandBytes);
+
+				ImageTypeSpecifier type = reader.getImageTypes(0).next();
+				SampleModel sampleModel;
+				try {
+					sampleModel = type.getSampleModel(width, height);
+				} catch (IllegalArgumentException e) {
+					// Integer.MAX_VALUE pixels or more
+					sampleModel = null;
+				}
+				if (sampleModel == null
+						|| MappedDataBuffer.size(sampleModel) > maxSamples) {
+					fromRegions(reader, raw, width, height, bandRows);
+					return;
+				}
+				ColorModel colorModel = type.getColorModel();
+				File samplesFile = File.createTempFile(raw.getName(),
+						".samples", raw.getAbsoluteFile().getParentFile());
+				MappedDataBuffer samples = MappedDataBuffer.create(
+						samplesFile, sampleModel);
+				try {
+					BufferedImage decoded = new BufferedImage(colorModel,
+							Raster.createWritableRaster(sampleModel, samples,
+									null), colorModel.isAlphaPremultiplied(),
+							null);
+					ImageReadParam param = reader.getDefaultReadParam();
+					param.setDestination(decoded);
+					try {
+						reader.read(0, param);
+					} catch (ClassCastException e) {
+						// some readers, like BMP's, only write to the
+						// JDK's own data buffers; they seek to each region
+						// themselves, so reading by regions stays linear
+						fromRegions(reader, raw, width, height, bandRows);
+						return;
+					}
+
+					RawImage out = create(raw, width, height);
+					try {
+						int[] pixels = new int[bandRows * width];
+						for (int row = 0; row < height; row += bandRows) {
+							int rows = Math.min(bandRows, height - row);
+							decoded.getRGB(0, row, width, rows, pixels, 0,
+									width);
+							out.writeRows(row, row + rows, pixels);
+						}
+					} finally {
+						out.close();
+					}
+				} finally {
+					samples.close();
+				}
+			} finally {
+				reader.dispose();
+			}
+		} finally {
+			input.close();
+		}
+	}
+
+	private static void fromRegions(ImageReader reader, File raw, int width,
+			int height, int bandRows) throws IOException {
+		int[] pixels = new int[bandRows * width];
+		RawImage out = create(raw, width, height);
+		try {
+			ImageReadParam param = reader.getDefaultReadParam();
+			for (int row = 0; row < height; row += bandRows) {
+				int rows = Math.min(bandRows, height - row);
+				param.setSourceRegion(new Rectangle(0, row, width, rows));
+				BufferedImage band = reader.read(0, param);
+				band.getRGB(0, 0, width, rows, pixels, 0, width);
+				out.writeRows(row, row + rows, pixels);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Stream the raw image <code>raw</code> to <code>ppm</code> as a binary
+	 * (P6) PPM, one band of rows at a time.
+	 */
+	public static void toPPM(File raw, File ppm, int bandBytes)
+			throws IOException {
+		RawImage in = open(raw);
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(ppm),
+				1 << 16);
+		try {
+			int width = in.width();
+			out.write(("P6\n" + width + " " + in.height() + "\n255\n")
+					.getBytes("US-ASCII"));
+			int bandRows = bandRows(width, bandBytes);
+			int[] pixels = new int[bandRows * width];
+			byte[] rgb = new byte[3 * width];
+			for (int row = 0; row < in.height(); row += bandRows) {
+				int rows = Math.min(bandRows, in.height() - row);
+				in.readRows(row, row + rows, pixels);
+				for (int r = 0; r < rows; r++) {
+					for (int x = 0; x < width; x++) {
+						int pixel = pixels[r * width + x];
+						rgb[3 * x] = (byte) (pixel >> 16);
+						rgb[3 * x + 1] = (byte) (pixel >> 8);
+						rgb[3 * x + 2] = (byte) pixel;
+					}
+					out.write(rgb);
+				}
+			}
+		} finally {
+			out.close();
+			in.close();
+		}
+	}
+
+	/**
+	 * Write the raw image <code>raw</code> to <code>image</code> with ImageIO.
+	 * Unlike {@link #toPPM}, this needs the whole image on the heap, so it
+	 * refuses images larger than a quarter of the maximum heap.
+	 */
+	public static void toImage(File raw, File image, String format)
+			throws IOException {
+		RawImage in = open(raw);
+		try {
+			long bytes = 4L * in.width() * in.height();
+			if (bytes > Integer.MAX_VALUE
+					|| bytes > Runtime.getRuntime().maxMemory() / 4)
+				throw new IOException(raw + " is too large to encode in memory;"
+						+ " convert it to .ppm instead");
+			BufferedImage img = new BufferedImage(in.width(), in.height(),
+					BufferedImage.TYPE_INT_RGB);
+			in.readRows(0, in.height(), ImagePixels.backingArray(img));
+			if (!ImageIO.write(img, format, image))
+				throw new IOException("no writer for " + format);
+		} finally {
+			in.close();
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("Usage: RawImage source destination");
+			System.exit(1);
+		}
+		File source = new File(args[0]);
+		File destination = new File(args[1]);
+		String name = destination.getName().toLowerCase();
+		int bandBytes = StreamingBlender.BAND_BYTES;
+		if (name.endsWith(".raw"))
+			fromImage(source, destination, bandBytes);
+		else if (name.endsWith(".ppm"))
+			toPPM(source, destination, bandBytes);
+		else
+			toImage(source, destination,
+					name.substring(name.lastIndexOf('.') + 1));
+	}
+}
@@ -0,0 +1,186 @@
+package blender;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Blends two {@link RawImage}s of the same size into a third one, band by
+ * band, for images larger than the heap.<br/>
+ *
+ * Each worker thread claims the next band of rows, copies it from the mapped
+ * inputs into its own two band buffers, blends it into a third one and copies
+ * that to the mapped output. The heap holds three band buffers per worker,
+ * about {@link #BAND_BYTES} each, whatever the size of the image; the rest is
+ * the operating system's page cache.
+ *
+ * Usage:
+ * <code>java blender.StreamingBlender input1.raw input2.raw output.raw [weight]</code>
+ * (see {@link RawImage} to convert from and to other formats)
+ */
+
+public class StreamingBlender {
+
+	/** The size of the pixels of a band. */
+	public static final int BAND_BYTES = 4 << 20;
+
+	private final int noOfThreads;
+	private final int bandBytes;
+	private BlendMode mode = BlendMode.LINEAR;
+	private double weight = 0.5;
+
+	public StreamingBlender() {
+		this(Runtime.getRuntime().availableProcessors(), BAND_BYTES);
+	}
+
+	public StreamingBlender(int noOfThreads, int bandBytes) {
+		this.noOfThreads = noOfThreads;
+		this.bandBytes = bandBytes;
+	}
+
+	public void setMode(BlendMode mode) {
+		this.mode = mode;
+	}
+
+	/**
+	 * Use <code>weight</code>, in [0, 1], as the share of the first image.
+	 */
+	public void setWeight(double weight) {
+		if (weight < 0 || weight > 1)
+			throw new IllegalArgumentException("weight not in [0, 1]: "
+					+ weight);
+		this.weight = weight;
+	}
+
+	/**
+	 * Blend the raw images <code>input1</code> and <code>input2</code> into
+	 * the raw image <code>output</code>, which is created or replaced. The
+	 * first failure of a worker, checked or not, stops the blend and is
+	 * thrown here.
+	 */
+	public void blend(File input1, File input2, File output)
+			throws IOException, InterruptedException {
+		RawImage in1 = RawImage.open(input1);
+		try {
+			RawImage in2 = RawImage.open(input2);
+			try {
+				if (in1.width() != in2.width() || in1.height() != in2.height())
+					throw new IOException("images of different sizes: "
+							+ in1.width() + "x" + in1.height() + " and "
+							+ in2.width() + "x" + in2.height());
+				RawImage out = RawImage.create(output, in1.width(),
+						in1.height());
+				try {
+					blend(in1, in2, out);
+				} finally {
+					out.close();
+				}
+			} finally {
+				in2.close();
+			}
+		} finally {
+			in1.close();
+		}
+	}
+
+	private void blend(RawImage in1, RawImage in2, RawImage out)
+			throws IOException, InterruptedException {
+		int bandRows = RawImage.bandRows(in1.width(), bandBytes);
+		int noOfBands = (in1.height() + bandRows - 1) / bandRows;
+		AtomicInteger nextBand = new AtomicInteger();
+		AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+		BandThread[] threads = new BandThread[Math.min(noOfThreads, noOfBands)];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new BandThread(in1, in2, out, bandRows, noOfBands,
+					nextBand, failure);
+			threads[i].start();
+		}
+		for (BandThread thread : threads)
+			thread.join();
+
+		Throwable e = failure.get();
+		if (e instanceof IOException)
+			throw (IOException) e;
+		if (e instanceof RuntimeException)
+			throw (RuntimeException) e;
+		if (e instanceof Error)
+			throw (Error) e;
+		if (e != null)
+			throw new RuntimeException(e);
+	}
+
+	private class BandThread extends Thread {
+		private final RawImage in1, in2, out;
+		private final int bandRows, noOfBands;
+		private final AtomicInteger nextBand;
+		private final AtomicReference<Throwable> failure;
+
+		BandThread(RawImage in1, RawImage in2, RawImage out, int bandRows,
+				int noOfBands, AtomicInteger nextBand,
+				AtomicReference<Throwable> failure) {
+			this.in1 = in1;
+			this.in2 = in2;
+			this.out = out;
+			this.bandRows = bandRows;
+			this.noOfBands = noOfBands;
+			this.nextBand = nextBand;
+			this.failure = failure;
+		}
+
+		@Override
+		public void run() {
+			try {
+				blendBands();
+			} catch (Throwable e) {
+				// unchecked ones too: ignored, they would leave zero-filled
+				// bands in the output
+				failure.compareAndSet(null, e);
+			}
+		}
+
+		private void blendBands() throws IOException {
+			int width = in1.width();
+			int[] pixels1 = new int[bandRows * width];
+			int[] pixels2 = new int[bandRows * width];
+			int[] result = new int[bandRows * width];
+			BlendMode mode = StreamingBlender.this.mode;
+			int fixedWeight = BlendKernel.fixedWeight(weight);
+
+			int band;
+			while (failure.get() == null
+					&& (band = nextBand.getAndIncrement()) < noOfBands) {
+				int loRow = band * bandRows;
+				int hiRow = Math.min(loRow + bandRows, in1.height());
+				in1.readRows(loRow, hiRow, pixels1);
+				in2.readRows(loRow, hiRow, pixels2);
+				mode.blendRow(pixels1, 0, pixels2, 0, result, 0,
+						(hiRow - loRow) * width, fixedWeight);
+				out.writeRows(loRow, hiRow, result);
+			}
+		}
+	}
+
+	public static void main(String[] args) throws IOException,
+			InterruptedException {
+		if (args.length < 3) {
+			System.err.println("Usage: StreamingBlender input1.raw input2.raw"
+					+ " output.raw [weight]");
+			System.exit(1);
+		}
+		StreamingBlender blender = new StreamingBlender();
+		if (args.length > 3)
+			blender.setWeight(Double.parseDouble(args[3]));
+
+		long start = System.nanoTime();
+		blender.blend(new File(args[0]), new File(args[1]), new File(args[2]));
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		RawImage out = RawImage.open(new File(args[2]));
+		double pixels = (double) out.width() * out.height();
+		out.close();
+		System.out.printf("Blended %.1f megapixels in %.2fs: %.1f MP/s\n",
+				pixels / 1e6, seconds, pixels / 1e6 / seconds);
+	}
+}
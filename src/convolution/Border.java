@@ -0,0 +1,43 @@
+package convolution;
+
+/**
+ * What a filter reads for the pixels of a kernel that fall outside the
+ * image.
+ */
+
+public enum Border {
+
+	/** The nearest pixel on the edge: ...aaa|abc...xyz|zzz... */
+	CLAMP {
+		@Override
+		public int index(int i, int n) {
+			return i < 0 ? 0 : i >= n ? n - 1 : i;
+		}
+	},
+
+	/** The image mirrored about its edge pixels: ...cb|abc...xyz|yx... */
+	REFLECT {
+		@Override
+		public int index(int i, int n) {
+			if (n == 1)
+				return 0;
+			int period = 2 * n - 2;
+			i = Math.floorMod(i, period);
+			return i < n ? i : period - i;
+		}
+	},
+
+	/** The image repeated: ...yz|abc...xyz|ab... */
+	WRAP {
+		@Override
+		public int index(int i, int n) {
+			return Math.floorMod(i, n);
+		}
+	};
+
+	/**
+	 * The index in [0, n) that stands for index <code>i</code> of a row or
+	 * column of <code>n</code> pixels.
+	 */
+	public abstract int index(int i, int n);
+}
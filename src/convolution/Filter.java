@@ -0,0 +1,293 @@
+package convolution;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import blender.EnginePool;
+import blender.Tiles;
+
+/**
+ * An image filter built from separable convolutions: Gaussian and box blurs,
+ * unsharp-mask sharpening and Sobel edge detection.<br/>
+ *
+ * Filters work on bands of rows of packed RGB pixels. {@link #apply} filters
+ * a whole image on a fork-join pool, splitting it into full-width
+ * {@link Tiles} as the blenders do; {@link FilteredBlender} filters bands
+ * right before blending them. Each worker thread keeps its own scratch rows,
+ * see {@link Pass}, so a filter can be shared between threads but not changed
+ * while it runs. Filtered pixels are opaque.
+ */
+
+public abstract class Filter {
+
+	/** The rows of a band, at least; wide kernels get taller bands. */
+	public static final int BAND_ROWS = 32;
+
+	private volatile Border border = Border.CLAMP;
+
+	private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+		@Override
+		protected Scratch initialValue() {
+			return new Scratch(passes());
+		}
+	};
+
+	/**
+	 * A worker's passes, one per kernel of the filter, and the rows they write
+	 * to.
+	 */
+	static final class Scratch {
+		final Pass[] passes;
+		final int[][] rows;
+
+		Scratch(Pass[] passes) {
+			this.passes = passes;
+			this.rows = new int[passes.length][0];
+		}
+
+		int[] row(int pass, int width) {
+			if (rows[pass].length < 3 * width)
+				rows[pass] = new int[3 * width];
+			return rows[pass];
+		}
+	}
+
+	/**
+	 * Use <code>border</code> for the pixels outside the image. Defaults to
+	 * {@link Border#CLAMP}.
+	 */
+	public void setBorder(Border border) {
+		this.border = border;
+	}
+
+	/**
+	 * The largest radius of the filter's kernels.
+	 */
+	public abstract int radius();
+
+	/**
+	 * New passes for a worker thread.
+	 */
+	abstract Pass[] passes();
+
+	/**
+	 * Pack the filtered row: <code>rows[p]</code> holds the output of pass
+	 * <code>p</code>, <code>src</code> the row of the source image at
+	 * <code>srcOffset</code>.
+	 */
+	abstract void pack(int[][] rows, int[] src, int srcOffset, int width,
+			int[] dst, int dstOffset);
+
+	/**
+	 * Filter the rows [loRow, hiRow) of <code>src</code>, an image of
+	 * <code>width</code> x <code>height</code> pixels with rows
+	 * <code>stride</code> apart, into <code>dst</code> from
+	 * <code>dstOffset</code> on, <code>width</code> pixels per row.
+	 */
+	public void filterRows(int[] src, int stride, int width, int height,
+			int loRow, int hiRow, int[] dst, int dstOffset) {
+		Scratch scratch = this.scratch.get();
+		Pass[] passes = scratch.passes;
+		int[][] rows = new int[passes.length][];
+		Border border = this.border;
+		for (int p = 0; p < passes.length; p++) {
+			passes[p].begin(src, stride, width, height, border, loRow);
+			rows[p] = scratch.row(p, width);
+		}
+		for (int y = loRow; y < hiRow; y++) {
+			for (int p = 0; p < passes.length; p++)
+				passes[p].row(y, rows[p]);
+			pack(rows, src, y * stride, width, dst, dstOffset + (y - loRow)
+					* width);
+		}
+	}
+
+	/**
+	 * Filter <code>src</code>, an image of <code>width</code> x
+	 * <code>height</code> pixels, into <code>dst</code>, in parallel on the
+	 * {@link EnginePool#shared() shared pool}.
+	 */
+	public void apply(int[] src, int width, int height, int[] dst) {
+		apply(src, width, height, dst, EnginePool.shared());
+	}
+
+	/**
+	 * As above, on <code>pool</code>.
+	 */
+	public void apply(int[] src, int width, int height, int[] dst,
+			ForkJoinPool pool) {
+		Tiles bands = bands(width, height);
+		pool.invoke(new FilterTask(src, width, height, dst,
+				bands, 0, bands.count()));
+	}
+
+	/**
+	 * Full-width bands tall enough that the 2r extra rows each band runs the
+	 * horizontal pass on stay a small part of its work.
+	 */
+	Tiles bands(int width, int height) {
+		return new Tiles(width, height, width, Math.max(BAND_ROWS,
+				8 * radius()));
+	}
+
+	@SuppressWarnings("serial")
+	private class FilterTask extends RecursiveAction {
+		private final int[] src, dst;
+		private final int width, height;
+		private final Tiles bands;
+		private final int loBand, hiBand;
+
+		FilterTask(int[] src, int width, int height, int[] dst, Tiles bands,
+				int loBand, int hiBand) {
+			this.src = src;
+			this.width = width;
+			this.height = height;
+			this.dst = dst;
+			this.bands = bands;
+			this.loBand = loBand;
+			this.hiBand = hiBand;
+		}
+
+		@Override
+		protected void compute() {
+			if (hiBand - loBand > 1) {
+				int middle = (loBand + hiBand) / 2;
+				invokeAll(new FilterTask(src, width, height, dst, bands,
+						loBand, middle), new FilterTask(src, width, height,
+						dst, bands, middle, hiBand));
+				return;
+			}
+			int y = bands.y(loBand);
+			filterRows(src, width, width, height, y, y
+					+ bands.height(loBand), dst, y * width);
+		}
+	}
+
+	private static int clamp(int value) {
+		return value < 0 ? 0 : value > 255 ? 255 : value;
+	}
+
+	/**
+	 * Round a value of {@link Pass} to a channel value.
+	 */
+	static int channel(int value) {
+		return clamp(value + (1 << Pass.FRACTION_BITS - 1) >> Pass.FRACTION_BITS);
+	}
+
+	/**
+	 * The filter convolving with <code>kernel</code> across and down.
+	 */
+	public static Filter blur(final Kernel kernel) {
+		return new Filter() {
+			@Override
+			public int radius() {
+				return kernel.radius;
+			}
+
+			@Override
+			Pass[] passes() {
+				return new Pass[] { new Pass(kernel, kernel) };
+			}
+
+			@Override
+			void pack(int[][] rows, int[] src, int srcOffset, int width,
+					int[] dst, int dstOffset) {
+				int[] row = rows[0];
+				for (int x = 0; x < width; x++)
+					dst[dstOffset + x] = 0xFF000000 | channel(row[x]) << 16
+							| channel(row[width + x]) << 8
+							| channel(row[2 * width + x]);
+			}
+		};
+	}
+
+	/**
+	 * Gaussian blur of standard deviation <code>sigma</code>.
+	 */
+	public static Filter gaussian(double sigma) {
+		return blur(Kernel.gaussian(sigma));
+	}
+
+	/**
+	 * Box blur, the mean of the <code>(2 * radius + 1)^2</code> pixels
+	 * around each one.
+	 */
+	public static Filter box(int radius) {
+		return blur(Kernel.box(radius));
+	}
+
+	/**
+	 * Unsharp masking: each pixel plus <code>amount</code> times its
+	 * difference from a Gaussian blur of standard deviation
+	 * <code>sigma</code>.
+	 */
+	public static Filter sharpen(double sigma, double amount) {
+		final Kernel kernel = Kernel.gaussian(sigma);
+		// amount in 1/256ths
+		final int fixedAmount = (int) Math.round(amount * 256);
+		return new Filter() {
+			@Override
+			public int radius() {
+				return kernel.radius;
+			}
+
+			@Override
+			Pass[] passes() {
+				return new Pass[] { new Pass(kernel, kernel) };
+			}
+
+			@Override
+			void pack(int[][] rows, int[] src, int srcOffset, int width,
+					int[] dst, int dstOffset) {
+				int[] blurred = rows[0];
+				for (int x = 0; x < width; x++) {
+					int rgb = src[srcOffset + x];
+					int r = sharpen((rgb >> 16) & 255, blurred[x]);
+					int g = sharpen((rgb >> 8) & 255, blurred[width + x]);
+					int b = sharpen(rgb & 255, blurred[2 * width + x]);
+					dst[dstOffset + x] = 0xFF000000 | r << 16 | g << 8 | b;
+				}
+			}
+
+			private int sharpen(int value, int blurred) {
+				int sharp = value << Pass.FRACTION_BITS;
+				return channel(sharp + (fixedAmount * (sharp - blurred) >> 8));
+			}
+		};
+	}
+
+	/**
+	 * Sobel edge detection: for each channel, the sum of the absolute
+	 * horizontal and vertical gradients, clamped to 255.
+	 */
+	public static Filter edges() {
+		final Kernel derivative = Kernel.of(-1, 0, 1);
+		final Kernel smoothing = Kernel.of(1, 2, 1);
+		return new Filter() {
+			@Override
+			public int radius() {
+				return 1;
+			}
+
+			@Override
+			Pass[] passes() {
+				return new Pass[] { new Pass(derivative, smoothing),
+						new Pass(smoothing, derivative) };
+			}
+
+			@Override
+			void pack(int[][] rows, int[] src, int srcOffset, int width,
+					int[] dst, int dstOffset) {
+				int[] gx = rows[0], gy = rows[1];
+				for (int x = 0; x < width; x++) {
+					int r = channel(Math.abs(gx[x]) + Math.abs(gy[x]));
+					int g = channel(Math.abs(gx[width + x])
+							+ Math.abs(gy[width + x]));
+					int b = channel(Math.abs(gx[2 * width + x])
+							+ Math.abs(gy[2 * width + x]));
+					dst[dstOffset + x] = 0xFF000000 | r << 16 | g << 8 | b;
+				}
+			}
+		};
+	}
+}
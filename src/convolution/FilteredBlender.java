@@ -0,0 +1,131 @@
+package convolution;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.MemoryImageSource;
+import java.util.concurrent.RecursiveAction;
+
+import blender.BlendKernel;
+import blender.BlendMode;
+import blender.Blender;
+import blender.Tiles;
+
+/**
+ * Fork-join implementation of image blending that filters either input, or
+ * both, on the way.<br/>
+ *
+ * Each task filters its band of rows of the inputs into band buffers of its
+ * worker thread and blends those into {@link #imageBuffer} while they are
+ * still in cache, so the filtered images never exist as a whole. Without
+ * filters, it blends as {@link blender.BlenderForkJoin} does over full-width
+ * bands.
+ */
+
+public class FilteredBlender extends Blender {
+
+	private final int width2, height2;
+	private volatile Filter filter1, filter2;
+
+	private final ThreadLocal<int[][]> bandBuffers = new ThreadLocal<int[][]>() {
+		@Override
+		protected int[][] initialValue() {
+			return new int[2][0];
+		}
+	};
+
+	public FilteredBlender(BufferedImage img1, BufferedImage img2,
+			int[] imageBuffer, MemoryImageSource imageSource) {
+		super(img1, img2, imageBuffer, imageSource);
+		this.width2 = img2.getWidth();
+		this.height2 = img2.getHeight();
+	}
+
+	public FilteredBlender(BufferedImage img1, BufferedImage img2,
+			int[] imageBuffer) {
+		super(img1, img2, imageBuffer);
+		this.width2 = img2.getWidth();
+		this.height2 = img2.getHeight();
+	}
+
+	/**
+	 * Filter the first image with <code>filter1</code> and the second with
+	 * <code>filter2</code> before blending them, in the following runs. Either
+	 * may be null, for no filter.
+	 */
+	public void setFilters(Filter filter1, Filter filter2) {
+		this.filter1 = filter1;
+		this.filter2 = filter2;
+	}
+
+	@Override
+	public void process() {
+		Filter filter1 = this.filter1, filter2 = this.filter2;
+		int radius = Math.max(filter1 == null ? 0 : filter1.radius(),
+				filter2 == null ? 0 : filter2.radius());
+		Tiles bands = new Tiles(width, height, width, Math.max(
+				Filter.BAND_ROWS, 8 * radius));
+		pool().invoke(new FilteredBlenderTask(filter1, filter2,
+				bands, 0, bands.count()));
+	}
+
+	@SuppressWarnings("serial")
+	private class FilteredBlenderTask extends RecursiveAction {
+		private final Filter filter1, filter2;
+		private final Tiles bands;
+		private final int loBand, hiBand;
+
+		FilteredBlenderTask(Filter filter1, Filter filter2, Tiles bands,
+				int loBand, int hiBand) {
+			this.filter1 = filter1;
+			this.filter2 = filter2;
+			this.bands = bands;
+			this.loBand = loBand;
+			this.hiBand = hiBand;
+		}
+
+		@Override
+		protected void compute() {
+			if (hiBand - loBand > 1) {
+				int middle = (loBand + hiBand) / 2;
+				invokeAll(new FilteredBlenderTask(filter1, filter2, bands,
+						loBand, middle), new FilteredBlenderTask(filter1,
+						filter2, bands, middle, hiBand));
+				return;
+			}
+			blendBand(filter1, filter2, bands.y(loBand), bands.y(loBand)
+					+ bands.height(loBand));
+		}
+	}
+
+	private void blendBand(Filter filter1, Filter filter2, int loRow, int hiRow) {
+		int[] src1 = pixels1, src2 = pixels2;
+		int offset1 = loRow * width, offset2 = loRow * width2;
+		int[][] buffers = bandBuffers.get();
+		if (filter1 != null) {
+			src1 = buffer(buffers, 0, (hiRow - loRow) * width);
+			filter1.filterRows(pixels1, width, width, height, loRow, hiRow,
+					src1, 0);
+			offset1 = 0;
+		}
+		if (filter2 != null) {
+			src2 = buffer(buffers, 1, (hiRow - loRow) * width2);
+			filter2.filterRows(pixels2, width2, width2, height2, loRow,
+					hiRow, src2, 0);
+			offset2 = 0;
+		}
+
+		BlendMode mode = this.mode;
+		int fixedWeight = BlendKernel.fixedWeight(weight);
+		for (int row = loRow; row < hiRow; row++) {
+			int i = row - loRow;
+			mode.blendRow(src1, offset1 + i * width, src2, offset2 + i
+					* width2, imageBuffer, row * width, width, fixedWeight);
+		}
+		regionDone(0, loRow, width, hiRow - loRow);
+	}
+
+	private static int[] buffer(int[][] buffers, int i, int length) {
+		if (buffers[i].length < length)
+			buffers[i] = new int[length];
+		return buffers[i];
+	}
+}
@@ -0,0 +1,79 @@
+package convolution;
+
+/**
+ * A one-dimensional convolution kernel of odd length, with fixed-point
+ * weights: {@link #ONE} stands for a weight of 1.<br/>
+ *
+ * A two-dimensional kernel that is the product of a column and a row, like a
+ * Gaussian, a box or a Sobel kernel, is applied as a horizontal and a
+ * vertical pass of two of these: 2r + 1 multiply-adds per pass instead of
+ * (2r + 1)^2.
+ */
+
+public final class Kernel {
+
+	public static final int SHIFT = 12;
+	public static final int ONE = 1 << SHIFT;
+
+	final int[] weights;
+	final int radius;
+
+	private Kernel(int[] weights) {
+		this.weights = weights;
+		this.radius = weights.length / 2;
+	}
+
+	/**
+	 * The kernel of the given weights, rounded to fixed point. Weights that
+	 * add up to 1 still do after rounding.
+	 */
+	public static Kernel of(double... weights) {
+		if (weights.length % 2 == 0)
+			throw new IllegalArgumentException("kernel of even length: "
+					+ weights.length);
+		int[] fixed = new int[weights.length];
+		double sum = 0;
+		int fixedSum = 0;
+		for (int i = 0; i < weights.length; i++) {
+			fixed[i] = (int) Math.round(weights[i] * ONE);
+			sum += weights[i];
+			fixedSum += fixed[i];
+		}
+		// the rounding errors go to the center weight
+		fixed[weights.length / 2] += (int) Math.round(sum * ONE) - fixedSum;
+		return new Kernel(fixed);
+	}
+
+	/**
+	 * The normalized Gaussian of standard deviation <code>sigma</code>, cut
+	 * off at 3 sigma.
+	 */
+	public static Kernel gaussian(double sigma) {
+		if (sigma <= 0)
+			throw new IllegalArgumentException("sigma not positive: " + sigma);
+		int radius = (int) Math.ceil(3 * sigma);
+		double[] weights = new double[2 * radius + 1];
+		double sum = 0;
+		for (int i = -radius; i <= radius; i++)
+			sum += weights[i + radius] = Math.exp(-i * i / (2 * sigma * sigma));
+		for (int i = 0; i < weights.length; i++)
+			weights[i] /= sum;
+		return of(weights);
+	}
+
+	/**
+	 * The normalized box of <code>2 * radius + 1</code> equal weights.
+	 */
+	public static Kernel box(int radius) {
+		if (radius < 0)
+			throw new IllegalArgumentException("negative radius: " + radius);
+		double[] weights = new double[2 * radius + 1];
+		for (int i = 0; i < weights.length; i++)
+			weights[i] = 1.0 / weights.length;
+		return of(weights);
+	}
+
+	public int radius() {
+		return radius;
+	}
+}
@@ -0,0 +1,141 @@
+package convolution;
+
+/**
+ * One worker's separable convolution of a band of rows, with its own scratch
+ * rows.<br/>
+ *
+ * Rows are produced one after the other. Each source row is unpacked once
+ * into three channel rows, padded on both sides as the {@link Border} says,
+ * and convolved with the horizontal kernel into a ring of 2r + 1 rows, r
+ * being the radius of the vertical kernel. Each output row is then the
+ * vertical kernel applied down the ring, so the horizontal pass of every
+ * source row is shared by the 2r + 1 output rows that need it and nothing
+ * larger than the ring is ever allocated.<br/>
+ *
+ * Channels stay apart in the ring, red, green, then blue, and carry
+ * {@link #FRACTION_BITS} bits below the 8-bit channel value, so rounding
+ * happens once, when a filter packs its result. With normalized kernels the
+ * sums stay below 2^24; signed kernels like Sobel's give signed values.
+ */
+
+final class Pass {
+
+	/** Extra precision of the values between and after the two passes. */
+	static final int FRACTION_BITS = 4;
+
+	private static final int H_SHIFT = Kernel.SHIFT - FRACTION_BITS;
+
+	private final Kernel horizontal, vertical;
+
+	private int[] src;
+	private int stride, width, height;
+	private Border border;
+	// the next row to run the horizontal pass on
+	private int nextRow;
+
+	private int[][] padded = new int[3][0];
+	private int[][] ring;
+
+	Pass(Kernel horizontal, Kernel vertical) {
+		this.horizontal = horizontal;
+		this.vertical = vertical;
+		this.ring = new int[2 * vertical.radius + 1][0];
+	}
+
+	/**
+	 * Start a band of <code>src</code>, an image of <code>width</code> x
+	 * <code>height</code> pixels with rows <code>stride</code> apart, at row
+	 * <code>firstRow</code>.
+	 */
+	void begin(int[] src, int stride, int width, int height, Border border,
+			int firstRow) {
+		this.src = src;
+		this.stride = stride;
+		this.width = width;
+		this.height = height;
+		this.border = border;
+		this.nextRow = firstRow - vertical.radius;
+
+		int paddedWidth = width + 2 * horizontal.radius;
+		if (padded[0].length < paddedWidth)
+			for (int c = 0; c < 3; c++)
+				padded[c] = new int[paddedWidth];
+		if (ring[0].length < 3 * width)
+			for (int i = 0; i < ring.length; i++)
+				ring[i] = new int[3 * width];
+	}
+
+	/**
+	 * Convolve row <code>y</code>, the first row of the band or the one after
+	 * the last, into <code>out</code>: <code>3 * width</code> channel values.
+	 */
+	void row(int y, int[] out) {
+		int r = vertical.radius;
+		while (nextRow <= y + r) {
+			horizontal(nextRow, ring[slot(nextRow)]);
+			nextRow++;
+		}
+
+		int length = 3 * width;
+		for (int i = 0; i < length; i++)
+			out[i] = 0;
+		int[] weights = vertical.weights;
+		for (int k = 0; k < weights.length; k++) {
+			int weight = weights[k];
+			if (weight == 0)
+				continue;
+			int[] row = ring[slot(y - r + k)];
+			for (int i = 0; i < length; i++)
+				out[i] += weight * row[i];
+		}
+		int half = 1 << Kernel.SHIFT - 1;
+		for (int i = 0; i < length; i++)
+			out[i] = out[i] + half >> Kernel.SHIFT;
+	}
+
+	private int slot(int row) {
+		return Math.floorMod(row, ring.length);
+	}
+
+	private void horizontal(int y, int[] dst) {
+		int r = horizontal.radius;
+		int[] red = padded[0], green = padded[1], blue = padded[2];
+		int rowOffset = border.index(y, height) * stride;
+		for (int x = 0; x < width; x++) {
+			int rgb = src[rowOffset + x];
+			red[x + r] = (rgb >> 16) & 255;
+			green[x + r] = (rgb >> 8) & 255;
+			blue[x + r] = rgb & 255;
+		}
+		for (int x = -r; x < 0; x++)
+			unpack(src[rowOffset + border.index(x, width)], x + r);
+		for (int x = width; x < width + r; x++)
+			unpack(src[rowOffset + border.index(x, width)], x + r);
+
+		int[] weights = horizontal.weights;
+		int half = 1 << H_SHIFT - 1;
+		for (int c = 0; c < 3; c++) {
+			int[] channel = padded[c];
+			int offset = c * width;
+			// tap by tap across the row, as the vertical pass does, so the
+			// inner loop is a plain multiply-add the JIT vectorizes
+			for (int x = 0; x < width; x++)
+				dst[offset + x] = half;
+			for (int k = 0; k < weights.length; k++) {
+				int weight = weights[k];
+				if (weight == 0)
+					continue;
+				for (int x = 0; x < width; x++)
+					dst[offset + x] += weight * channel[x + k];
+			}
+			for (int x = 0; x < width; x++)
+				dst[offset + x] >>= H_SHIFT;
+		}
+	}
+
+	private void unpack(int rgb, int i) {
+		padded[0][i] = (rgb >> 16) & 255;
+		padded[1][i] = (rgb >> 8) & 255;
+		padded[2][i] = rgb & 255;
+	}
+}
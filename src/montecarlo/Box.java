@@ -0,0 +1,59 @@
+package montecarlo;
+
+import java.util.Arrays;
+
+/**
+ * An axis-aligned box [lower[0], upper[0]) x ... x [lower[d-1], upper[d-1]),
+ * the domain of a {@link MonteCarloIntegrator}.
+ */
+
+public final class Box {
+	private final double[] lower;
+	private final double[] upper;
+
+	public Box(double[] lower, double[] upper) {
+		if (lower.length != upper.length || lower.length == 0)
+			throw new IllegalArgumentException("bounds of different dimensions: "
+					+ Arrays.toString(lower) + ", " + Arrays.toString(upper));
+		for (int i = 0; i < lower.length; i++)
+			if (!(lower[i] < upper[i]))
+				throw new IllegalArgumentException("empty box in dimension "
+						+ i + ": [" + lower[i] + ", " + upper[i] + ")");
+		this.lower = lower.clone();
+		this.upper = upper.clone();
+	}
+
+	/**
+	 * The box [0, 1)^dimension.
+	 */
+	public static Box unit(int dimension) {
+		double[] lower = new double[dimension];
+		double[] upper = new double[dimension];
+		Arrays.fill(upper, 1.0);
+		return new Box(lower, upper);
+	}
+
+	public int dimension() {
+		return lower.length;
+	}
+
+	public double lower(int i) {
+		return lower[i];
+	}
+
+	public double upper(int i) {
+		return upper[i];
+	}
+
+	public double volume() {
+		double volume = 1;
+		for (int i = 0; i < lower.length; i++)
+			volume *= upper[i] - lower[i];
+		return volume;
+	}
+
+	@Override
+	public String toString() {
+		return "Box" + Arrays.toString(lower) + " - " + Arrays.toString(upper);
+	}
+}
@@ -0,0 +1,157 @@
+package montecarlo;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Contention-free aggregation of a fixed number of running sums per worker,
+ * e.g. sample counts and sums of a Monte Carlo computation, which can be read
+ * at any time while the workers run.<br/>
+ *
+ * Every worker owns one slot and is the only thread that ever writes to it.
+ * Slots are padded to two cache lines, so workers never share a line with each
+ * other. A worker publishes its running sums every {@link #publishEach()}
+ * samples; between publications it only touches its own local variables.<br/>
+ *
+ * Each slot is guarded by a sequence lock: the writer makes the sequence odd,
+ * stores all its values and makes the sequence even again. Readers retry until
+ * they see the same even sequence before and after reading the values, so the
+ * values of a slot always come from the same publication. Readers
+ * never write to the slots and therefore never slow the writers down.
+ */
+
+public class LiveSums {
+
+	// 16 longs = 128 bytes, i.e. two cache lines (adjacent line prefetch)
+	private static final int STRIDE = 16;
+	private static final int SEQUENCE = 0;
+	private static final int MAX_SUMS = STRIDE - 1;
+
+	private final AtomicLongArray slots;
+	private final int workers;
+	private final int sums;
+	private final int publishEach;
+	private volatile long startTime;
+
+	/**
+	 * Sums for <code>workers</code> workers, each publishing
+	 * <code>sums</code> values every <code>publishEach</code> samples.
+	 */
+	public LiveSums(int workers, int sums, int publishEach) {
+		if (workers <= 0)
+			throw new IllegalArgumentException("workers: " + workers);
+		if (sums <= 0 || sums > MAX_SUMS)
+			throw new IllegalArgumentException("sums: " + sums);
+		if (publishEach <= 0)
+			throw new IllegalArgumentException("publishEach: " + publishEach);
+		this.workers = workers;
+		this.sums = sums;
+		this.publishEach = publishEach;
+		// one extra slot on each side keeps the first and last slot away from
+		// the array header and from whatever is allocated after the array
+		this.slots = new AtomicLongArray((workers + 2) * STRIDE);
+		this.startTime = System.nanoTime();
+	}
+
+	public int workers() {
+		return workers;
+	}
+
+	/**
+	 * Number of values in every slot.
+	 */
+	public int sums() {
+		return sums;
+	}
+
+	/**
+	 * Number of samples a worker computes between two publications.
+	 */
+	public int publishEach() {
+		return publishEach;
+	}
+
+	/**
+	 * Clear all slots. Must only be called while no worker is publishing, i.e.
+	 * before the workers are started.
+	 */
+	public void reset() {
+		long[] zeros = new long[sums];
+		for (int worker = 0; worker < workers; worker++)
+			publish(worker, zeros);
+		startTime = System.nanoTime();
+	}
+
+	/**
+	 * The value of {@link System#nanoTime()} when the counters were created or
+	 * last {@link #reset()}.
+	 */
+	public long startTime() {
+		return startTime;
+	}
+
+	/**
+	 * Publish the two running values of <code>worker</code>, for sums of two
+	 * values, without an array. Must only be called by the thread owning that
+	 * slot.
+	 */
+	public void publish(int worker, long value0, long value1) {
+		int base = base(worker);
+		long sequence = slots.getPlain(base + SEQUENCE);
+		slots.setOpaque(base + SEQUENCE, sequence + 1);
+		VarHandle.storeStoreFence();
+		slots.setOpaque(base + 1, value0);
+		slots.setOpaque(base + 2, value1);
+		slots.setRelease(base + SEQUENCE, sequence + 2);
+	}
+
+	/**
+	 * Publish the running values of <code>worker</code>, the first
+	 * {@link #sums()} elements of <code>values</code>. Must only be called by
+	 * the thread owning that slot.
+	 */
+	public void publish(int worker, long[] values) {
+		int base = base(worker);
+		long sequence = slots.getPlain(base + SEQUENCE);
+		slots.setOpaque(base + SEQUENCE, sequence + 1);
+		VarHandle.storeStoreFence();
+		for (int i = 0; i < sums; i++)
+			slots.setOpaque(base + 1 + i, values[i]);
+		slots.setRelease(base + SEQUENCE, sequence + 2);
+	}
+
+	/**
+	 * Read the values of one publication of <code>worker</code> into the first
+	 * {@link #sums()} elements of <code>values</code>.
+	 */
+	public void read(int worker, long[] values) {
+		int base = base(worker);
+		long before, after;
+		do {
+			before = slots.getAcquire(base + SEQUENCE);
+			for (int i = 0; i < sums; i++)
+				values[i] = slots.getOpaque(base + 1 + i);
+			VarHandle.loadLoadFence();
+			after = slots.getOpaque(base + SEQUENCE);
+		} while ((before & 1) != 0 || before != after);
+	}
+
+	/**
+	 * Read consistent values for every worker and store their sums in the
+	 * first {@link #sums()} elements of <code>counts</code>.
+	 */
+	public void snapshot(long[] counts) {
+		long[] values = new long[sums];
+		for (int i = 0; i < sums; i++)
+			counts[i] = 0;
+		for (int worker = 0; worker < workers; worker++) {
+			read(worker, values);
+			for (int i = 0; i < sums; i++)
+				counts[i] += values[i];
+		}
+	}
+
+	private static int base(int worker) {
+		return (worker + 1) * STRIDE;
+	}
+}
@@ -0,0 +1,238 @@
+package montecarlo;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Parallel Monte Carlo integration of a function over a {@link Box}.<br/>
+ *
+ * The integral is approximated by the volume of the box times the mean of the
+ * integrand at uniformly distributed random points. One worker thread per core
+ * claims batches of {@link #BATCH} samples from a shared counter until all
+ * samples are taken, so exactly the requested number of samples is computed
+ * and a slow core simply claims fewer batches.<br/>
+ *
+ * Each worker keeps its own sums and a single point buffer, which is refilled
+ * and handed to the integrand for every sample; integrands must therefore not
+ * keep a reference to it. After every batch the worker publishes its sums to
+ * its own {@link LiveSums} slot, from which {@link #liveValue()} reads a
+ * consistent approximation at any time during the computation, like the live
+ * values of the pi package. The sums are doubles, stored as their raw
+ * bits.<br/>
+ *
+ * If the integrand throws, the remaining samples are abandoned and
+ * {@link #integrate(long)} rethrows the first failure.
+ */
+
+public class MonteCarloIntegrator {
+
+	public static final int BATCH = 1 << 14;
+
+	private final ToDoubleFunction<double[]> integrand;
+	private final DoubleUnaryOperator integrand1d;
+	private final Box box;
+	private static final int COUNT = 0;
+	private static final int SUM = 1;
+	private static final int SUM_OF_SQUARES = 2;
+
+	private final LiveSums sums;
+	private final AtomicLong unclaimed = new AtomicLong();
+	private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+	private volatile long runtime;
+
+	/**
+	 * Integrate a function of <code>box.dimension()</code> variables.
+	 */
+	public MonteCarloIntegrator(ToDoubleFunction<double[]> integrand, Box box) {
+		this(integrand, null, box);
+	}
+
+	/**
+	 * Integrate a function of one variable over [from, to).
+	 */
+	public MonteCarloIntegrator(DoubleUnaryOperator integrand, double from,
+			double to) {
+		this(null, integrand, new Box(new double[] { from },
+				new double[] { to }));
+	}
+
+	private MonteCarloIntegrator(ToDoubleFunction<double[]> integrand,
+			DoubleUnaryOperator integrand1d, Box box) {
+		this.integrand = integrand;
+		this.integrand1d = integrand1d;
+		this.box = box;
+		this.sums = new LiveSums(Runtime.getRuntime().availableProcessors(),
+				3, BATCH);
+	}
+
+	public Box box() {
+		return box;
+	}
+
+	/**
+	 * Approximate the integral using <code>samples</code> random points.
+	 */
+	public double integrate(long samples) throws InterruptedException {
+		int noOfCores = sums.workers();
+		IntegrationThread[] threads = new IntegrationThread[noOfCores];
+		sums.reset();
+		failure.set(null);
+		unclaimed.set(samples);
+
+		long start = System.nanoTime();
+		for (int i = 0; i < noOfCores; i++) {
+			threads[i] = new IntegrationThread(i);
+			threads[i].start();
+		}
+		for (int i = 0; i < noOfCores; i++)
+			threads[i].join();
+		runtime = System.nanoTime() - start;
+
+		Throwable e = failure.get();
+		if (e instanceof RuntimeException)
+			throw (RuntimeException) e;
+		if (e instanceof Error)
+			throw (Error) e;
+		if (e != null)
+			throw new RuntimeException(e);
+		return liveValue();
+	}
+
+	/**
+	 * Return the most up-to-date approximation. This method can be invoked at
+	 * any time from outside the integrator.
+	 */
+	public double liveValue() {
+		long[] count = new long[1];
+		double[] moments = new double[2];
+		snapshot(count, moments);
+		return box.volume() * moments[0] / count[0];
+	}
+
+	/**
+	 * The standard error of the current approximation.
+	 */
+	public double standardError() {
+		long[] count = new long[1];
+		double[] moments = new double[2];
+		snapshot(count, moments);
+		double n = count[0];
+		double variance = (moments[1] - moments[0] * moments[0] / n) / (n - 1);
+		return box.volume() * Math.sqrt(variance / n);
+	}
+
+	/**
+	 * The number of samples taken so far.
+	 */
+	public long samples() {
+		long[] count = new long[1];
+		snapshot(count, new double[2]);
+		return count[0];
+	}
+
+	/**
+	 * Throughput of the last {@link #integrate(long)}.
+	 */
+	public double samplesPerSecondPerCore() {
+		return samples() * 1e9 / runtime / sums.workers();
+	}
+
+	/**
+	 * Store the total count in <code>count[0]</code> and the total sum and sum
+	 * of squares in <code>moments[0]</code> and <code>moments[1]</code>.
+	 */
+	private void snapshot(long[] count, double[] moments) {
+		long[] values = new long[sums.sums()];
+		long totalCount = 0;
+		double totalSum = 0, totalSumOfSquares = 0;
+		for (int worker = 0; worker < sums.workers(); worker++) {
+			sums.read(worker, values);
+			totalCount += values[COUNT];
+			totalSum += Double.longBitsToDouble(values[SUM]);
+			totalSumOfSquares += Double.longBitsToDouble(values[SUM_OF_SQUARES]);
+		}
+		count[0] = totalCount;
+		moments[0] = totalSum;
+		moments[1] = totalSumOfSquares;
+	}
+
+	/**
+	 * Claim the next batch of samples.
+	 *
+	 * @return the size of the batch, 0 once all samples are claimed
+	 */
+	private long claim() {
+		while (true) {
+			long left = unclaimed.get();
+			if (left == 0)
+				return 0;
+			long batch = Math.min(BATCH, left);
+			if (unclaimed.compareAndSet(left, left - batch))
+				return batch;
+		}
+	}
+
+	class IntegrationThread extends Thread {
+		private final int slot;
+
+		public IntegrationThread(int slot) {
+			this.slot = slot;
+		}
+
+		@Override
+		public void run() {
+			try {
+				sample();
+			} catch (Throwable e) {
+				failure.compareAndSet(null, e);
+				// let the other workers stop after their current batch
+				unclaimed.set(0);
+			}
+		}
+
+		private void sample() {
+			SplittableRandom random = new SplittableRandom();
+			int dimension = box.dimension();
+			double[] lower = new double[dimension];
+			double[] width = new double[dimension];
+			for (int i = 0; i < dimension; i++) {
+				lower[i] = box.lower(i);
+				width[i] = box.upper(i) - box.lower(i);
+			}
+			double[] point = new double[dimension];
+			long[] values = new long[sums.sums()];
+
+			long count = 0;
+			double sum = 0, sumOfSquares = 0;
+			long batch;
+			while ((batch = claim()) > 0) {
+				double batchSum = 0, batchSumOfSquares = 0;
+				if (integrand1d != null)
+					for (long j = 0; j < batch; j++) {
+						double value = integrand1d.applyAsDouble(lower[0]
+								+ random.nextDouble() * width[0]);
+						batchSum += value;
+						batchSumOfSquares += value * value;
+					}
+				else
+					for (long j = 0; j < batch; j++) {
+						for (int i = 0; i < dimension; i++)
+							point[i] = lower[i] + random.nextDouble() * width[i];
+						double value = integrand.applyAsDouble(point);
+						batchSum += value;
+						batchSumOfSquares += value * value;
+					}
+				count += batch;
+				sum += batchSum;
+				sumOfSquares += batchSumOfSquares;
+				values[COUNT] = count;
+				values[SUM] = Double.doubleToRawLongBits(sum);
+				values[SUM_OF_SQUARES] = Double.doubleToRawLongBits(sumOfSquares);
+				sums.publish(slot, values);
+			}
+		}
+	}
+}
@@ -0,0 +1,34 @@
+package pi;
+
+import montecarlo.LiveSums;
+
+/**
+ * Contention-free aggregation of (inside, total) sample counts for
+ * {@link LiveValue} implementations: {@link LiveSums} of two values per
+ * worker, the samples inside the circle and all samples so far, read as a pi
+ * approximation.
+ */
+
+public class LiveCounters extends LiveSums {
+
+	// publish the counts each DEFAULT_PUBLISH_EACH samples
+	public static final int DEFAULT_PUBLISH_EACH = 100000;
+
+	public LiveCounters(int workers) {
+		this(workers, DEFAULT_PUBLISH_EACH);
+	}
+
+	public LiveCounters(int workers, int publishEach) {
+		super(workers, 2, publishEach);
+	}
+
+	/**
+	 * Return the pi approximation of the counts published so far, or
+	 * <code>NaN</code> if nothing was published yet.
+	 */
+	public double liveValue() {
+		long[] counts = new long[2];
+		snapshot(counts);
+		return counts[0] * 4.0 / counts[1];
+	}
+}
@@ -0,0 +1,54 @@
+package pi;
+
+/**
+ * A snapshot of a running pi approximation, as pushed by
+ * {@link LiveEstimatePublisher}.
+ */
+
+public final class LiveEstimate {
+	private final double estimate;
+	private final long samples;
+	private final double standardError;
+	private final long elapsedNanos;
+
+	public LiveEstimate(double estimate, long samples, double standardError,
+			long elapsedNanos) {
+		this.estimate = estimate;
+		this.samples = samples;
+		this.standardError = standardError;
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	/**
+	 * Build the estimate for <code>inside</code> out of <code>total</code>
+	 * samples. Each sample is a Bernoulli trial with p = inside / total, so
+	 * the standard error of 4p is 4 * sqrt(p * (1 - p) / total).
+	 */
+	public static LiveEstimate of(long inside, long total, long elapsedNanos) {
+		double p = ((double) inside) / total;
+		double standardError = 4 * Math.sqrt(p * (1 - p) / total);
+		return new LiveEstimate(4 * p, total, standardError, elapsedNanos);
+	}
+
+	public double estimate() {
+		return estimate;
+	}
+
+	public long samples() {
+		return samples;
+	}
+
+	public double standardError() {
+		return standardError;
+	}
+
+	public long elapsedNanos() {
+		return elapsedNanos;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%.8f +/- %.8f (%d samples, %d ms)", estimate,
+				standardError, samples, elapsedNanos / 1000000);
+	}
+}
@@ -0,0 +1,249 @@
+package pi;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Pushes {@link LiveEstimate}s of a running computation to its subscribers,
+ * instead of having them poll {@link LiveValue#liveValue()}.<br/>
+ *
+ * A single publisher thread reads the {@link LiveCounters} once per period and
+ * hands the estimate to every subscriber, so the rate is bounded by the period
+ * and the worker threads never do any monitoring work. Subscribers get no
+ * more estimates than they requested; a subscriber that falls behind only
+ * keeps the latest estimate, which it receives as soon as it requests more.
+ * This holds for the final estimate too: a subscriber without demand at
+ * {@link #close()} is completed only after it has requested and received
+ * it.<br/>
+ *
+ * The publisher thread never calls a subscriber itself: it only replaces the
+ * latest estimate of each subscription and schedules a delivery task for it
+ * on a pool of delivery threads, at most one per subscription at a time. The
+ * signals to one subscriber are thus issued one after the other, and a slow
+ * subscriber only delays itself.
+ */
+
+public class LiveEstimatePublisher implements Flow.Publisher<LiveEstimate>,
+		AutoCloseable {
+
+	private final LiveCounters counters;
+	private final ScheduledExecutorService publisherThread;
+	private final ExecutorService deliveryThreads;
+	private final List<EstimateSubscription> subscriptions = new CopyOnWriteArrayList<EstimateSubscription>();
+
+	// only accessed from the publisher thread
+	private final long[] counts = new long[2];
+	private long lastTotal = -1;
+	private boolean closed;
+
+	public LiveEstimatePublisher(LiveCounters counters, long period,
+			TimeUnit unit) {
+		this.counters = counters;
+		this.publisherThread = Executors
+				.newSingleThreadScheduledExecutor(daemons("Live estimate publisher"));
+		this.deliveryThreads = Executors
+				.newCachedThreadPool(daemons("Live estimate delivery"));
+		publisherThread.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				publish();
+			}
+		}, period, period, unit);
+	}
+
+	private static ThreadFactory daemons(final String name) {
+		return new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, name);
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	@Override
+	public void subscribe(final Flow.Subscriber<? super LiveEstimate> subscriber) {
+		if (subscriber == null)
+			throw new NullPointerException();
+		final EstimateSubscription subscription = new EstimateSubscription(
+				subscriber);
+		try {
+			publisherThread.execute(new Runnable() {
+				@Override
+				public void run() {
+					if (closed) {
+						subscription.complete();
+						return;
+					}
+					subscriptions.add(subscription);
+					subscription.drain();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// already closed
+			subscription.complete();
+		}
+	}
+
+	/**
+	 * Publish the final estimate, complete all subscribers once they have
+	 * received it and stop the publisher thread.
+	 */
+	@Override
+	public void close() {
+		try {
+			publisherThread.execute(new Runnable() {
+				@Override
+				public void run() {
+					if (closed)
+						return;
+					publish();
+					closed = true;
+					for (EstimateSubscription subscription : subscriptions)
+						subscription.complete();
+					subscriptions.clear();
+					// lets the deliveries scheduled so far finish
+					deliveryThreads.shutdown();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// already closed
+			return;
+		}
+		publisherThread.shutdown();
+	}
+
+	private void publish() {
+		counters.snapshot(counts);
+		if (counts[1] == 0 || counts[1] == lastTotal)
+			return;
+		lastTotal = counts[1];
+		LiveEstimate estimate = LiveEstimate.of(counts[0], counts[1],
+				System.nanoTime() - counters.startTime());
+		for (EstimateSubscription subscription : subscriptions)
+			subscription.offer(estimate);
+	}
+
+	private class EstimateSubscription implements Flow.Subscription, Runnable {
+		private final Flow.Subscriber<? super LiveEstimate> subscriber;
+		private final AtomicLong demand = new AtomicLong();
+		private final AtomicReference<LiveEstimate> latest = new AtomicReference<LiveEstimate>();
+		// the number of drain() calls not yet handled by a delivery task
+		private final AtomicInteger pending = new AtomicInteger();
+		private volatile boolean cancelled;
+		private volatile boolean completed;
+		private volatile Throwable error;
+		// only accessed from the delivery task
+		private boolean subscribed;
+		private boolean done;
+
+		EstimateSubscription(Flow.Subscriber<? super LiveEstimate> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				error = new IllegalArgumentException("non-positive request: "
+						+ n);
+				cancelled = true;
+				drain();
+				return;
+			}
+			long current, next;
+			do {
+				current = demand.get();
+				next = current + n < 0 ? Long.MAX_VALUE : current + n;
+			} while (!demand.compareAndSet(current, next));
+			drain();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+			subscriptions.remove(this);
+		}
+
+		void offer(LiveEstimate estimate) {
+			latest.set(estimate);
+			drain();
+		}
+
+		void complete() {
+			completed = true;
+			drain();
+		}
+
+		/**
+		 * Have a delivery task signal whatever is due, unless one is already
+		 * running, which then checks again before it finishes. Once the
+		 * delivery threads are shut down, the caller delivers itself.
+		 */
+		void drain() {
+			if (pending.getAndIncrement() != 0)
+				return;
+			try {
+				deliveryThreads.execute(this);
+			} catch (RejectedExecutionException e) {
+				run();
+			}
+		}
+
+		@Override
+		public void run() {
+			int missed = 1;
+			do {
+				try {
+					deliver();
+				} catch (Throwable e) {
+					// a subscriber must not throw; stop signalling it
+					done = true;
+					cancel();
+				}
+				missed = pending.addAndGet(-missed);
+			} while (missed != 0);
+		}
+
+		private void deliver() {
+			if (done)
+				return;
+			if (!subscribed) {
+				subscribed = true;
+				subscriber.onSubscribe(this);
+			}
+			if (error != null) {
+				done = true;
+				subscriptions.remove(this);
+				subscriber.onError(error);
+				return;
+			}
+			if (cancelled) {
+				done = true;
+				return;
+			}
+			if (demand.get() > 0) {
+				LiveEstimate estimate = latest.getAndSet(null);
+				if (estimate != null) {
+					demand.decrementAndGet();
+					subscriber.onNext(estimate);
+				}
+			}
+			// hold the completion until the final estimate is delivered
+			if (completed && !cancelled && latest.get() == null) {
+				done = true;
+				subscriber.onComplete();
+			}
+		}
+	}
+}
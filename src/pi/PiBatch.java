@@ -0,0 +1,47 @@
+package pi;
+
+/**
+ * Parallel implementation of {@link PiApproximation} in which every thread
+ * samples through its own {@link PiBatchKernel}.
+ */
+
+public class PiBatch implements PiApproximation {
+
+	@Override
+	public double computePi(long iterations) throws InterruptedException {
+		int noOfCores = Runtime.getRuntime().availableProcessors();
+		PiApproximationThread[] threads = new PiApproximationThread[noOfCores];
+
+		for (int i = 0; i < noOfCores; i++) {
+			long partialIterations = iterations / noOfCores
+					+ (i < iterations % noOfCores ? 1 : 0);
+			threads[i] = new PiApproximationThread(partialIterations);
+			threads[i].start();
+		}
+
+		long inside = 0;
+		for (int i = 0; i < noOfCores; i++) {
+			threads[i].join();
+			inside += threads[i].inside();
+		}
+		return inside * 4.0 / iterations;
+	}
+
+	static class PiApproximationThread extends Thread {
+		private final long iterations;
+		private long inside;
+
+		public PiApproximationThread(long iterations) {
+			this.iterations = iterations;
+		}
+
+		@Override
+		public void run() {
+			inside = new PiBatchKernel().sample(iterations);
+		}
+
+		public long inside() {
+			return inside;
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package pi;
+
+import java.util.SplittableRandom;
+
+/**
+ * Batch sampling kernel for the pi approximation.<br/>
+ *
+ * Instead of drawing and testing one (x, y) pair at a time, the kernel fills
+ * two buffers with {@link #LANES} random coordinates and then counts the hits
+ * over the whole batch. The counting loop has no branch: the sign bit of
+ * <code>x * x + y * y - 1.0</code> is 1 exactly when the point is inside the
+ * circle, so it is added to the count as is. This avoids the mispredictions
+ * of the <code>if (lenght &lt; 1.0)</code> test and leaves a straight-line loop
+ * over arrays that the JIT can unroll and vectorize.<br/>
+ *
+ * A kernel owns its buffers and random generator and must only be used by one
+ * thread.
+ */
+
+public final class PiBatchKernel {
+
+	public static final int LANES = 1024;
+
+	private final double[] xs = new double[LANES];
+	private final double[] ys = new double[LANES];
+	private final SplittableRandom random;
+
+	public PiBatchKernel() {
+		this(new SplittableRandom());
+	}
+
+	public PiBatchKernel(SplittableRandom random) {
+		this.random = random;
+	}
+
+	/**
+	 * The random generator of this kernel, for samplers that draw their own
+	 * points.
+	 */
+	public SplittableRandom random() {
+		return random;
+	}
+
+	/**
+	 * Draw <code>samples</code> random points in the unit square.
+	 *
+	 * @return the number of points inside the circle
+	 */
+	public long sample(long samples) {
+		long inside = 0;
+		while (samples > 0) {
+			int lanes = (int) Math.min(LANES, samples);
+			for (int i = 0; i < lanes; i++) {
+				xs[i] = random.nextDouble();
+				ys[i] = random.nextDouble();
+			}
+			inside += countInside(xs, ys, lanes);
+			samples -= lanes;
+		}
+		return inside;
+	}
+
+	/**
+	 * Count the points (xs[i], ys[i]), i &lt; lanes, with x * x + y * y &lt; 1.
+	 */
+	static long countInside(double[] xs, double[] ys, int lanes) {
+		long inside = 0;
+		for (int i = 0; i < lanes; i++) {
+			double x = xs[i];
+			double y = ys[i];
+			inside += Double.doubleToRawLongBits(x * x + y * y - 1.0) >>> 63;
+		}
+		return inside;
+	}
+}
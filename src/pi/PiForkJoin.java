@@ -0,0 +1,96 @@
+package pi;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Work-stealing implementation of {@link PiApproximation}.<br/>
+ *
+ * The samples are not split up front between a fixed number of threads.
+ * Instead, the range of samples is halved recursively into batches of at most
+ * {@link #BATCH} samples, which idle workers steal from busy ones, so a core
+ * slowed down by other load simply ends up computing fewer batches. The
+ * partial {@link SampleMoments} are merged up the same tree on the way back.
+ * All counts are <code>long</code>s.<br/>
+ *
+ * The points are drawn with a {@link SamplingStrategy}. With
+ * {@link SamplingStrategy#PLAIN} exactly the requested number of samples is
+ * computed; other strategies round it up to a whole number of observations.
+ * Unless given a pool, it runs on {@link ForkJoinPool#commonPool()}, so
+ * instances own no threads and need no shutdown.
+ */
+
+public class PiForkJoin implements PiApproximation {
+
+	public static final long BATCH = 1 << 16;
+
+	private final ForkJoinPool pool;
+	private final SamplingStrategy strategy;
+	private volatile SampleMoments moments;
+
+	private final ThreadLocal<PiBatchKernel> kernels = new ThreadLocal<PiBatchKernel>() {
+		@Override
+		protected PiBatchKernel initialValue() {
+			return new PiBatchKernel();
+		}
+	};
+
+	public PiForkJoin() {
+		this(SamplingStrategy.PLAIN);
+	}
+
+	public PiForkJoin(SamplingStrategy strategy) {
+		this(strategy, ForkJoinPool.commonPool());
+	}
+
+	public PiForkJoin(SamplingStrategy strategy, ForkJoinPool pool) {
+		this.strategy = strategy;
+		this.pool = pool;
+	}
+
+	@Override
+	public double computePi(long iterations) {
+		int pointsPerObservation = strategy.pointsPerObservation();
+		long observations = (iterations + pointsPerObservation - 1)
+				/ pointsPerObservation;
+		long batch = Math.max(1, BATCH / pointsPerObservation);
+		moments = pool.invoke(new PiTask(0, observations, batch));
+		return moments.estimate();
+	}
+
+	/**
+	 * The moments of the last {@link #computePi(long)}, e.g. for its
+	 * {@link SampleMoments#variance() effective variance}.
+	 */
+	public SampleMoments moments() {
+		return moments;
+	}
+
+	@SuppressWarnings("serial")
+	class PiTask extends RecursiveTask<SampleMoments> {
+		private final long from, to;
+		private final long batch;
+
+		public PiTask(long from, long to, long batch) {
+			this.from = from;
+			this.to = to;
+			this.batch = batch;
+		}
+
+		@Override
+		protected SampleMoments compute() {
+			if (to - from <= batch) {
+				SampleMoments moments = new SampleMoments(strategy);
+				strategy.sample(kernels.get(), to - from, moments);
+				return moments;
+			}
+
+			long middle = from + (to - from) / 2;
+			PiTask left = new PiTask(from, middle, batch);
+			PiTask right = new PiTask(middle, to, batch);
+			left.fork();
+			SampleMoments moments = right.compute();
+			return moments.merge(left.join());
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package pi;
+
+import java.util.function.ToDoubleFunction;
+
+import montecarlo.Box;
+import montecarlo.MonteCarloIntegrator;
+
+/**
+ * {@link PiApproximation} as a client of the general
+ * {@link MonteCarloIntegrator}: pi is the integral of 4 * [x^2 + y^2 &lt; 1]
+ * over the unit square.
+ */
+
+public class PiIntegration implements PiApproximation, LiveValue {
+
+	private final MonteCarloIntegrator integrator = new MonteCarloIntegrator(
+			new ToDoubleFunction<double[]>() {
+				@Override
+				public double applyAsDouble(double[] point) {
+					double lenght = point[0] * point[0] + point[1] * point[1];
+					return lenght < 1.0 ? 4.0 : 0.0;
+				}
+			}, Box.unit(2));
+
+	@Override
+	public double computePi(long iterations) throws InterruptedException {
+		return integrator.integrate(iterations);
+	}
+
+	@Override
+	public double liveValue() {
+		return integrator.liveValue();
+	}
+
+	public MonteCarloIntegrator integrator() {
+		return integrator;
+	}
+}
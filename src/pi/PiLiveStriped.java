@@ -0,0 +1,99 @@
+package pi;
+
+import java.util.Random;
+
+/**
+ * Parallel implementation of {@link PiApproximation} that reports the
+ * approximation so far through {@link LiveCounters}.<br/>
+ *
+ * Unlike {@link PiLiveAtomic} and {@link PiLiveSync}, the threads do not
+ * contend on shared counters or monitors: each of them counts in local
+ * variables and publishes to its own padded slot every
+ * {@link LiveCounters#publishEach()} samples. {@link #liveValue()} always
+ * combines inside and total counts of the same publication.
+ */
+
+public class PiLiveStriped implements PiApproximation, LiveValue {
+
+	private final LiveCounters counters;
+
+	public PiLiveStriped() {
+		this(LiveCounters.DEFAULT_PUBLISH_EACH);
+	}
+
+	public PiLiveStriped(int publishEach) {
+		counters = new LiveCounters(Runtime.getRuntime()
+				.availableProcessors(), publishEach);
+	}
+
+	@Override
+	public double computePi(long iterations) throws InterruptedException {
+		int noOfCores = counters.workers();
+		PiApproximationThread[] threads = new PiApproximationThread[noOfCores];
+		counters.reset();
+
+		for (int i = 0; i < noOfCores; i++) {
+			// spread the remainder so that exactly iterations samples are taken
+			long partialIterations = iterations / noOfCores
+					+ (i < iterations % noOfCores ? 1 : 0);
+			threads[i] = new PiApproximationThread(i, partialIterations);
+			threads[i].start();
+		}
+
+		long inside = 0;
+		for (int i = 0; i < noOfCores; i++) {
+			threads[i].join();
+			inside += threads[i].inside();
+		}
+		return inside * 4.0 / iterations;
+	}
+
+	@Override
+	public double liveValue() {
+		return counters.liveValue();
+	}
+
+	/**
+	 * The counters the threads publish to, e.g. for a
+	 * {@link LiveEstimatePublisher}.
+	 */
+	public LiveCounters counters() {
+		return counters;
+	}
+
+	class PiApproximationThread extends Thread {
+		private final int slot;
+		private final long iterations;
+		private long inside;
+
+		public PiApproximationThread(int slot, long iterations) {
+			this.slot = slot;
+			this.iterations = iterations;
+		}
+
+		@Override
+		public void run() {
+			Random rand = new Random();
+			int publishEach = counters.publishEach();
+
+			long inside = 0;
+			long soFar = 0;
+			while (soFar < iterations) {
+				long next = Math.min(iterations, soFar + publishEach);
+				for (; soFar < next; soFar++) {
+					double x = rand.nextDouble();
+					double y = rand.nextDouble();
+					double lenght = x * x + y * y;
+					if (lenght < 1.0)
+						inside++;
+				}
+				counters.publish(slot, inside, soFar);
+			}
+			this.inside = inside;
+		}
+
+		public long inside() {
+			return inside;
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package pi;
+
+/**
+ * Running sums of the observations of a {@link SamplingStrategy}, from which
+ * the estimate and its variance are derived.<br/>
+ *
+ * An observation is one value whose expectation is pi, built from
+ * {@link SamplingStrategy#pointsPerObservation()} random points. Every worker
+ * fills its own instance; partial results are combined with
+ * {@link #merge(SampleMoments)}.
+ */
+
+public final class SampleMoments {
+	private final SamplingStrategy strategy;
+	private long observations;
+	private double sumY, sumYY;
+	// sums of the control variate, if the strategy uses one
+	private double sumC, sumCC, sumYC;
+
+	public SampleMoments(SamplingStrategy strategy) {
+		this.strategy = strategy;
+	}
+
+	/**
+	 * Add <code>n</code> observations with the given sum and sum of squares.
+	 */
+	public void add(long n, double sumY, double sumYY) {
+		this.observations += n;
+		this.sumY += sumY;
+		this.sumYY += sumYY;
+	}
+
+	/**
+	 * Add <code>n</code> observations together with the sums of their control
+	 * variate c and of the products y * c.
+	 */
+	public void add(long n, double sumY, double sumYY, double sumC,
+			double sumCC, double sumYC) {
+		add(n, sumY, sumYY);
+		this.sumC += sumC;
+		this.sumCC += sumCC;
+		this.sumYC += sumYC;
+	}
+
+	public SampleMoments merge(SampleMoments other) {
+		add(other.observations, other.sumY, other.sumYY, other.sumC,
+				other.sumCC, other.sumYC);
+		return this;
+	}
+
+	public long observations() {
+		return observations;
+	}
+
+	/**
+	 * Number of random points the observations were built from.
+	 */
+	public long samples() {
+		return observations * strategy.pointsPerObservation();
+	}
+
+	public double estimate() {
+		double meanY = sumY / observations;
+		if (!strategy.hasControlVariate())
+			return meanY;
+		double meanC = sumC / observations;
+		return meanY - beta() * (meanC - strategy.controlMean());
+	}
+
+	/**
+	 * The effective variance per random point, i.e. the variance of
+	 * {@link #estimate()} times {@link #samples()}. Plain sampling of pi has an
+	 * effective variance of 16 p (1 - p) ~ 2.70 with p = pi / 4; a strategy
+	 * needs proportionally fewer points to reach the same error.
+	 */
+	public double variance() {
+		double n = observations;
+		double centeredYY = sumYY - sumY * sumY / n;
+		double varianceY;
+		if (strategy.hasControlVariate()) {
+			double centeredCC = sumCC - sumC * sumC / n;
+			double centeredYC = sumYC - sumY * sumC / n;
+			varianceY = (centeredYY - centeredYC * centeredYC / centeredCC)
+					/ (n - 2);
+		} else
+			varianceY = centeredYY / (n - 1);
+		return varianceY * strategy.pointsPerObservation();
+	}
+
+	/**
+	 * The standard error of {@link #estimate()}.
+	 */
+	public double standardError() {
+		return Math.sqrt(variance() / samples());
+	}
+
+	/**
+	 * The control variate coefficient minimizing the variance, estimated from
+	 * the observations: cov(y, c) / var(c).
+	 */
+	private double beta() {
+		double n = observations;
+		double centeredCC = sumCC - sumC * sumC / n;
+		double centeredYC = sumYC - sumY * sumC / n;
+		return centeredCC == 0 ? 0 : centeredYC / centeredCC;
+	}
+}
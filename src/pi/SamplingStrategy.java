@@ -0,0 +1,156 @@
+package pi;
+
+import java.util.SplittableRandom;
+
+/**
+ * Ways of drawing the random points of the pi approximation. All strategies
+ * except {@link #PLAIN} reduce the variance of the estimate, so the same
+ * error is reached with fewer points.<br/>
+ *
+ * A strategy keeps no state of its own: it samples through the
+ * {@link PiBatchKernel} of the calling worker and accumulates into that
+ * worker's {@link SampleMoments}, without allocating.
+ */
+
+public enum SamplingStrategy {
+
+	/**
+	 * Independent uniform points; one observation 4 * [x^2 + y^2 &lt; 1] per
+	 * point.
+	 */
+	PLAIN(1) {
+		@Override
+		public void sample(PiBatchKernel kernel, long observations,
+				SampleMoments moments) {
+			long inside = kernel.sample(observations);
+			moments.add(observations, 4.0 * inside, 16.0 * inside);
+		}
+	},
+
+	/**
+	 * Pairs of points (x, y) and (1 - x, 1 - y). A point close to the origin is
+	 * paired with one far from it, so the hits of a pair are negatively
+	 * correlated.
+	 */
+	ANTITHETIC(2) {
+		@Override
+		public void sample(PiBatchKernel kernel, long observations,
+				SampleMoments moments) {
+			SplittableRandom random = kernel.random();
+			long sumH = 0, sumHH = 0;
+			for (long i = 0; i < observations; i++) {
+				double x = random.nextDouble();
+				double y = random.nextDouble();
+				double x2 = 1.0 - x;
+				double y2 = 1.0 - y;
+				long h = inside(x * x + y * y) + inside(x2 * x2 + y2 * y2);
+				sumH += h;
+				sumHH += h * h;
+			}
+			// an observation is 2 * h, the mean of the two points
+			moments.add(observations, 2.0 * sumH, 4.0 * sumHH);
+		}
+	},
+
+	/**
+	 * One point in each cell of a {@link #STRATA} x {@link #STRATA} grid per
+	 * observation. Only the cells crossed by the circle contribute variance.
+	 */
+	STRATIFIED(SamplingStrategy.STRATA * SamplingStrategy.STRATA) {
+		@Override
+		public void sample(PiBatchKernel kernel, long observations,
+				SampleMoments moments) {
+			SplittableRandom random = kernel.random();
+			double cell = 1.0 / STRATA;
+			double sumY = 0, sumYY = 0;
+			for (long i = 0; i < observations; i++) {
+				long h = 0;
+				for (int row = 0; row < STRATA; row++)
+					for (int col = 0; col < STRATA; col++) {
+						double x = (row + random.nextDouble()) * cell;
+						double y = (col + random.nextDouble()) * cell;
+						h += inside(x * x + y * y);
+					}
+				double observation = 4.0 * h / (STRATA * STRATA);
+				sumY += observation;
+				sumYY += observation * observation;
+			}
+			moments.add(observations, sumY, sumYY);
+		}
+	},
+
+	/**
+	 * Plain points, corrected with the control variate c = x^2 + y^2, whose
+	 * mean 2/3 is known. Points with a small c are more likely inside the
+	 * circle; the correction coefficient is estimated from the samples.
+	 */
+	CONTROL_VARIATE(1) {
+		@Override
+		public void sample(PiBatchKernel kernel, long observations,
+				SampleMoments moments) {
+			SplittableRandom random = kernel.random();
+			long sumH = 0;
+			double sumC = 0, sumCC = 0, sumHC = 0;
+			for (long i = 0; i < observations; i++) {
+				double x = random.nextDouble();
+				double y = random.nextDouble();
+				double c = x * x + y * y;
+				long h = inside(c);
+				sumH += h;
+				sumC += c;
+				sumCC += c * c;
+				sumHC += h * c;
+			}
+			moments.add(observations, 4.0 * sumH, 16.0 * sumH, sumC, sumCC,
+					4.0 * sumHC);
+		}
+
+		@Override
+		public boolean hasControlVariate() {
+			return true;
+		}
+
+		@Override
+		public double controlMean() {
+			return 2.0 / 3.0;
+		}
+	};
+
+	public static final int STRATA = 16;
+
+	private final int pointsPerObservation;
+
+	private SamplingStrategy(int pointsPerObservation) {
+		this.pointsPerObservation = pointsPerObservation;
+	}
+
+	/**
+	 * Draw <code>observations</code> observations and add them to
+	 * <code>moments</code>.
+	 */
+	public abstract void sample(PiBatchKernel kernel, long observations,
+			SampleMoments moments);
+
+	/**
+	 * Number of random points that make up one observation.
+	 */
+	public int pointsPerObservation() {
+		return pointsPerObservation;
+	}
+
+	public boolean hasControlVariate() {
+		return false;
+	}
+
+	public double controlMean() {
+		return Double.NaN;
+	}
+
+	/**
+	 * 1 if the squared distance <code>lenght</code> is inside the circle, 0
+	 * otherwise, without branching.
+	 */
+	static long inside(double lenght) {
+		return Double.doubleToRawLongBits(lenght - 1.0) >>> 63;
+	}
+}
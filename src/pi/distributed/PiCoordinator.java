@@ -0,0 +1,419 @@
+package pi.distributed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import pi.LiveCounters;
+import pi.LiveValue;
+import pi.PiApproximation;
+
+/**
+ * Implementation of {@link PiApproximation} that spreads the samples over
+ * several local {@link PiWorker} processes.<br/>
+ *
+ * The samples are divided into substreams, each drawn from its own disjoint
+ * and reproducible random sequence, so the result only depends on the seed
+ * and the number of samples. The coordinator hands out substreams to the
+ * workers over localhost sockets and collects the (inside, total) counts they
+ * stream back, which {@link #liveValue()} aggregates at any time.<br/>
+ *
+ * If a worker fails, the partial counts of its current substream are dropped,
+ * the substream is handed out again and a replacement process is started. A
+ * worker that reports nothing for {@link #setTimeout(int)} milliseconds is
+ * considered failed as well and is killed. The whole computation gives up
+ * after {@link #setDeadline(long)} milliseconds.
+ */
+
+public class PiCoordinator implements PiApproximation, LiveValue {
+
+	// substreams per worker process, for load balancing
+	public static final int STREAMS_PER_PROCESS = 8;
+	public static final int DEFAULT_TIMEOUT = 10000;
+	public static final long DEFAULT_DEADLINE = 10 * 60 * 1000;
+
+	/**
+	 * Notified of every count a worker reports, on the thread of its
+	 * connection.
+	 */
+	public interface ProgressListener {
+		void progress(Process worker, int stream, long inside, long total);
+	}
+
+	private final int processes;
+	private final long seed;
+	private final int maxRestarts;
+	private final List<Process> workerProcesses = new CopyOnWriteArrayList<Process>();
+	private final AtomicInteger failedStreams = new AtomicInteger();
+	private volatile int timeout = DEFAULT_TIMEOUT;
+	private volatile long deadline = DEFAULT_DEADLINE;
+	private volatile double samplesPerSecond;
+	private volatile ProgressListener listener;
+	private volatile String java = System.getProperty("java.home")
+			+ File.separator + "bin" + File.separator + "java";
+	private volatile String classPath = System.getProperty("java.class.path");
+
+	private volatile LiveCounters counters;
+
+	public PiCoordinator(int processes) {
+		this(processes, new SplittableRandom().nextLong());
+	}
+
+	public PiCoordinator(int processes, long seed) {
+		this.processes = processes;
+		this.seed = seed;
+		this.maxRestarts = 4 * processes;
+	}
+
+	@Override
+	public double computePi(long iterations) throws Exception {
+		Run run = new Run(iterations);
+		try {
+			return run.compute();
+		} finally {
+			run.close();
+		}
+	}
+
+	@Override
+	public double liveValue() {
+		LiveCounters counters = this.counters;
+		return counters == null ? Double.NaN : counters.liveValue();
+	}
+
+	/**
+	 * The worker processes started so far by the current computation.
+	 */
+	public List<Process> workerProcesses() {
+		return workerProcesses;
+	}
+
+	/**
+	 * The number of substreams handed out again after a worker failed, since
+	 * the start of the current computation.
+	 */
+	public int failedStreams() {
+		return failedStreams.get();
+	}
+
+	/**
+	 * Consider a worker failed if it reports nothing for <code>millis</code>
+	 * milliseconds while computing a substream.
+	 */
+	public void setTimeout(int millis) {
+		if (millis <= 0)
+			throw new IllegalArgumentException("timeout: " + millis);
+		timeout = millis;
+	}
+
+	/**
+	 * Give up a computation that has not finished after <code>millis</code>
+	 * milliseconds.
+	 */
+	public void setDeadline(long millis) {
+		if (millis <= 0)
+			throw new IllegalArgumentException("deadline: " + millis);
+		deadline = millis;
+	}
+
+	/**
+	 * Throughput of the last {@link #computePi(long)}, from the start of the
+	 * worker processes to the last reported substream.
+	 */
+	public double samplesPerSecond() {
+		return samplesPerSecond;
+	}
+
+	public void setProgressListener(ProgressListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Start the workers with the <code>java</code> executable. Defaults to
+	 * the one of the running JVM, from <code>java.home</code>.
+	 */
+	public void setJava(String java) {
+		if (java == null)
+			throw new NullPointerException("java");
+		this.java = java;
+	}
+
+	/**
+	 * Start the workers with the class path <code>classPath</code>, which
+	 * must contain {@link PiWorker}. Defaults to
+	 * <code>java.class.path</code>, which is not enough when this class was
+	 * loaded by another class loader, e.g. in a container or from a module.
+	 */
+	public void setClassPath(String classPath) {
+		if (classPath == null)
+			throw new NullPointerException("classPath");
+		this.classPath = classPath;
+	}
+
+	/**
+	 * The state of one {@link PiCoordinator#computePi(long)}.
+	 */
+	class Run {
+		private final int streams;
+		private final long[] samples;
+		private final long[] inside;
+		private final BlockingDeque<Integer> pending = new LinkedBlockingDeque<Integer>();
+		private final CountDownLatch completed;
+		private final AtomicInteger restarts = new AtomicInteger();
+		// worker id -> process; ids are handed to the workers on their
+		// command line, so a worker may connect before its process is known
+		private final Map<Integer, CompletableFuture<Process>> workers = new ConcurrentHashMap<Integer, CompletableFuture<Process>>();
+		private final AtomicInteger nextWorker = new AtomicInteger();
+		private final ServerSocket serverSocket;
+		private volatile boolean closed;
+
+		Run(long iterations) throws IOException {
+			streams = (int) Math.max(1,
+					Math.min(processes * STREAMS_PER_PROCESS, iterations));
+			samples = new long[streams];
+			inside = new long[streams];
+			for (int i = 0; i < streams; i++) {
+				samples[i] = iterations / streams
+						+ (i < iterations % streams ? 1 : 0);
+				pending.add(i);
+			}
+			completed = new CountDownLatch(streams);
+			counters = new LiveCounters(streams, (int) PiWorker.PUBLISH_EACH);
+			serverSocket = new ServerSocket(0, processes,
+					InetAddress.getLoopbackAddress());
+		}
+
+		double compute() throws Exception {
+			workerProcesses.clear();
+			failedStreams.set(0);
+			long start = System.nanoTime();
+			long end = start + TimeUnit.MILLISECONDS.toNanos(deadline);
+			new Acceptor().start();
+			for (int i = 0; i < processes; i++)
+				startWorker();
+
+			while (!completed.await(100, TimeUnit.MILLISECONDS)) {
+				if (restarts.get() > maxRestarts)
+					throw new IOException("giving up after " + maxRestarts
+							+ " failed workers");
+				if (System.nanoTime() - end > 0)
+					throw new TimeoutException("giving up after " + deadline
+							+ "ms");
+			}
+
+			long totalInside = 0;
+			long total = 0;
+			for (int i = 0; i < streams; i++) {
+				totalInside += inside[i];
+				total += samples[i];
+			}
+			samplesPerSecond = total * 1e9 / (System.nanoTime() - start);
+			return totalInside * 4.0 / total;
+		}
+
+		void close() throws IOException, InterruptedException {
+			closed = true;
+			serverSocket.close();
+			for (Process process : workerProcesses)
+				if (!process.waitFor(1, TimeUnit.SECONDS))
+					process.destroy();
+		}
+
+		private void startWorker() throws IOException {
+			int id = nextWorker.getAndIncrement();
+			CompletableFuture<Process> started = new CompletableFuture<Process>();
+			workers.put(id, started);
+			ProcessBuilder builder = new ProcessBuilder(java, "-cp",
+					classPath, PiWorker.class.getName(),
+					Integer.toString(serverSocket.getLocalPort()),
+					Integer.toString(id));
+			builder.inheritIO();
+			Process process;
+			try {
+				process = builder.start();
+			} catch (IOException e) {
+				workers.remove(id);
+				throw e;
+			}
+			started.complete(process);
+			workerProcesses.add(process);
+			process.onExit().thenRun(new Runnable() {
+				@Override
+				public void run() {
+					workerExited();
+				}
+			});
+		}
+
+		/**
+		 * Replace a worker process that exited before all substreams were
+		 * computed. Its current substream, if any, is handed out again by its
+		 * connection.
+		 */
+		private void workerExited() {
+			if (closed || completed.getCount() == 0
+					|| restarts.incrementAndGet() > maxRestarts)
+				return;
+			try {
+				startWorker();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+
+		/**
+		 * Called by a connection whose worker failed while computing
+		 * <code>stream</code>.
+		 */
+		private void streamFailed(int stream) {
+			// only the failed connection was publishing to this slot
+			counters.publish(stream, 0, 0);
+			failedStreams.incrementAndGet();
+			pending.addFirst(stream);
+		}
+
+		/**
+		 * @return the started worker process with the given id
+		 * @throws IOException
+		 *             if no such worker was started
+		 */
+		private Process workerProcess(int id) throws IOException,
+				InterruptedException, ExecutionException, TimeoutException {
+			CompletableFuture<Process> process = workers.get(id);
+			if (process == null)
+				throw new IOException("unknown worker " + id);
+			return process.get(timeout, TimeUnit.MILLISECONDS);
+		}
+
+		class Acceptor extends Thread {
+			Acceptor() {
+				setDaemon(true);
+			}
+
+			@Override
+			public void run() {
+				try {
+					while (!closed)
+						new Connection(serverSocket.accept()).start();
+				} catch (SocketException e) {
+					// server socket closed, computation over
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+
+		class Connection extends Thread {
+			private final Socket socket;
+
+			Connection(Socket socket) {
+				this.socket = socket;
+				setDaemon(true);
+			}
+
+			@Override
+			public void run() {
+				int stream = -1;
+				Process worker = null;
+				try {
+					socket.setSoTimeout(timeout);
+					DataInputStream in = new DataInputStream(
+							new BufferedInputStream(socket.getInputStream()));
+					DataOutputStream out = new DataOutputStream(
+							new BufferedOutputStream(socket.getOutputStream()));
+					worker = workerProcess(in.readInt());
+
+					while ((stream = nextStream()) >= 0) {
+						out.writeByte(PiWorker.ASSIGN);
+						out.writeInt(stream);
+						out.writeLong(seed);
+						out.writeLong(samples[stream]);
+						out.flush();
+
+						byte message;
+						do {
+							message = in.readByte();
+							int reported = in.readInt();
+							long reportedInside = in.readLong();
+							long reportedTotal = in.readLong();
+							if (reported != stream)
+								throw new IOException("expected substream "
+										+ stream + ", got " + reported);
+							counters.publish(stream, reportedInside,
+									reportedTotal);
+							ProgressListener listener = PiCoordinator.this.listener;
+							if (listener != null)
+								listener.progress(worker, stream,
+										reportedInside, reportedTotal);
+							if (message == PiWorker.DONE)
+								inside[stream] = reportedInside;
+						} while (message == PiWorker.PROGRESS);
+
+						stream = -1;
+						completed.countDown();
+					}
+					out.writeByte(PiWorker.QUIT);
+					out.flush();
+				} catch (SocketTimeoutException e) {
+					// a hung worker counts as dead; its exit starts a
+					// replacement
+					if (worker != null)
+						worker.destroyForcibly();
+				} catch (IOException e) {
+					// the worker died or sent garbage
+				} catch (Throwable e) {
+					// e.g. a failing listener; the worker's exit starts a
+					// replacement
+					e.printStackTrace();
+					if (worker != null)
+						worker.destroyForcibly();
+				} finally {
+					if (stream >= 0)
+						streamFailed(stream);
+					try {
+						socket.close();
+					} catch (IOException e) {
+					}
+				}
+			}
+
+			/**
+			 * @return the next pending substream, or -1 once all substreams
+			 *         are computed
+			 */
+			private int nextStream() {
+				try {
+					while (completed.getCount() > 0 && !closed) {
+						Integer stream = pending.poll(100,
+								TimeUnit.MILLISECONDS);
+						if (stream != null)
+							return stream;
+					}
+				} catch (InterruptedException e) {
+				}
+				return -1;
+			}
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package pi.distributed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.SplittableRandom;
+
+import pi.PiBatchKernel;
+
+/**
+ * A worker process of {@link PiCoordinator}.<br/>
+ *
+ * It connects to the coordinator on localhost, identifies itself by the id the
+ * coordinator gave it and computes the substreams it is assigned, one at a time, reporting the
+ * running (inside, total) counts of the current substream every
+ * {@link #PUBLISH_EACH} samples.
+ *
+ * Usage: <code>java pi.distributed.PiWorker &lt;port&gt; &lt;id&gt;</code>
+ */
+
+public class PiWorker {
+
+	public static final long PUBLISH_EACH = 1 << 20;
+
+	// coordinator -> worker
+	static final byte QUIT = 0;
+	static final byte ASSIGN = 1;
+	// worker -> coordinator
+	static final byte PROGRESS = 1;
+	static final byte DONE = 2;
+
+	/**
+	 * The random generator of substream <code>stream</code>. Substreams of the
+	 * same seed are disjoint and always produce the same numbers, no matter
+	 * which worker computes them.
+	 */
+	static SplittableRandom substream(long seed, int stream) {
+		SplittableRandom root = new SplittableRandom(seed);
+		SplittableRandom substream = root.split();
+		for (int i = 0; i < stream; i++)
+			substream = root.split();
+		return substream;
+	}
+
+	public static void main(String[] args) throws IOException {
+		int port = Integer.parseInt(args[0]);
+		int id = Integer.parseInt(args[1]);
+		Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+					socket.getInputStream()));
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(socket.getOutputStream()));
+			out.writeInt(id);
+			out.flush();
+
+			while (in.readByte() == ASSIGN) {
+				int stream = in.readInt();
+				long seed = in.readLong();
+				long samples = in.readLong();
+
+				PiBatchKernel kernel = new PiBatchKernel(substream(seed, stream));
+				long inside = 0;
+				long total = 0;
+				do {
+					long batch = Math.min(PUBLISH_EACH, samples - total);
+					inside += kernel.sample(batch);
+					total += batch;
+					out.writeByte(total < samples ? PROGRESS : DONE);
+					out.writeInt(stream);
+					out.writeLong(inside);
+					out.writeLong(total);
+					out.flush();
+				} while (total < samples);
+			}
+		} finally {
+			socket.close();
+		}
+	}
+}
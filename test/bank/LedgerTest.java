@@ -0,0 +1,108 @@
+package bank;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Concurrent tests for {@link Ledger}: transfers between accounts of
+ * different stripes and of the same stripe, while the total is read.
+ */
+
+public class LedgerTest {
+	private static final int ACCOUNTS = 1024, STRIPES = 4;
+	private static final long BALANCE = 100;
+	private static final int TRANSFERS = 200000;
+
+	@Test(timeout = 60000)
+	public void testTotalConserved() throws Throwable {
+		final Ledger ledger = new Ledger(ACCOUNTS, BALANCE, STRIPES);
+		final long total = ACCOUNTS * BALANCE;
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Thread[] threads = new Thread[6];
+		for (int i = 0; i < threads.length; i++) {
+			final boolean sameStripe = i % 2 == 1;
+			final long seed = i;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						transfer(ledger, sameStripe, seed);
+					} catch (Throwable e) {
+						failure.compareAndSet(null, e);
+					}
+				}
+			};
+		}
+		for (Thread thread : threads)
+			thread.start();
+
+		// the total is consistent at any time, not only at the end
+		boolean running = true;
+		while (running) {
+			assertEquals(total, ledger.total());
+			running = false;
+			for (Thread thread : threads)
+				running |= thread.isAlive();
+		}
+		for (Thread thread : threads)
+			thread.join();
+
+		if (failure.get() != null)
+			throw failure.get();
+		assertEquals(total, ledger.total());
+		long sum = 0;
+		for (int id = 0; id < ACCOUNTS; id++) {
+			assertTrue(ledger.balance(id) >= 0);
+			sum += ledger.balance(id);
+		}
+		assertEquals(total, sum);
+	}
+
+	/**
+	 * Make random transfers between any two accounts, or between two accounts
+	 * of the same stripe: both in one block of 64 balances, or a multiple of
+	 * <code>64 * STRIPES</code> apart.
+	 */
+	private static void transfer(Ledger ledger, boolean sameStripe, long seed) {
+		Random random = new Random(seed);
+		for (int i = 0; i < TRANSFERS; i++) {
+			int from = random.nextInt(ACCOUNTS);
+			int to;
+			if (!sameStripe)
+				to = random.nextInt(ACCOUNTS);
+			else if (random.nextBoolean())
+				to = from & ~63 | random.nextInt(64);
+			else
+				to = (from + 64 * STRIPES * (1 + random.nextInt(4))) % ACCOUNTS;
+			ledger.transfer(from, to, random.nextInt(2 * (int) BALANCE));
+		}
+	}
+
+	@Test
+	public void testBalancesAcrossBlocks() {
+		// not a multiple of the block size
+		Ledger ledger = new Ledger(200, BALANCE, STRIPES);
+		assertEquals(200, ledger.accounts());
+		assertTrue(ledger.transfer(63, 64, 10));
+		assertTrue(ledger.transfer(199, 0, 5));
+		assertEquals(BALANCE - 10, ledger.balance(63));
+		assertEquals(BALANCE + 10, ledger.balance(64));
+		assertEquals(BALANCE - 5, ledger.balance(199));
+		assertEquals(BALANCE + 5, ledger.balance(0));
+		assertEquals(200 * BALANCE, ledger.total());
+	}
+
+	@Test
+	public void testInsufficientBalance() {
+		Ledger ledger = new Ledger(16, BALANCE, STRIPES);
+		assertFalse(ledger.transfer(0, 9, BALANCE + 1));
+		assertTrue(ledger.transfer(0, 9, BALANCE));
+		assertEquals(0, ledger.balance(0));
+		assertEquals(2 * BALANCE, ledger.balance(9));
+		assertEquals(16 * BALANCE, ledger.total());
+	}
+}
@@ -0,0 +1,92 @@
+package blender;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link BatchBlender}: its results against {@link Blender} runs,
+ * its failure count and its input checks, and for {@link IntBufferPool}.
+ */
+
+public class BatchBlenderTest {
+	private static final int WIDTH = 67, HEIGHT = 31, IMAGES = 3;
+
+	@Test(timeout = 30000)
+	public void testBlendsPairs() throws Exception {
+		File root = Files.createTempDirectory("batch").toFile();
+		File dir1 = new File(root, "in1"), dir2 = new File(root, "in2");
+		File output = new File(root, "out");
+		dir1.mkdir();
+		dir2.mkdir();
+		for (int i = 0; i < IMAGES; i++) {
+			ImageIO.write(randomImage(2 * i), "png", new File(dir1, i + ".png"));
+			ImageIO.write(randomImage(2 * i + 1), "png", new File(dir2, i
+					+ ".png"));
+		}
+		// not an image: fails to decode
+		Files.write(new File(dir1, "broken.png").toPath(), new byte[] { 1, 2 });
+		Files.write(new File(dir2, "broken.png").toPath(), new byte[] { 3, 4 });
+		// no counterpart in dir2: skipped
+		ImageIO.write(randomImage(99), "png", new File(dir1, "alone.png"));
+
+		BatchBlender batch = new BatchBlender(dir1, dir2, output, "png");
+		batch.setParallelism(2, 2, 2, 2);
+		assertEquals(IMAGES, batch.run());
+		assertEquals(1, batch.failed());
+
+		for (int i = 0; i < IMAGES; i++) {
+			BufferedImage img1 = ImageIO.read(new File(dir1, i + ".png"));
+			BufferedImage img2 = ImageIO.read(new File(dir2, i + ".png"));
+			int[] expected = new int[WIDTH * HEIGHT];
+			new BlenderSequential(img1, img2, expected).run();
+			BufferedImage result = ImageIO.read(new File(output, i + ".png"));
+			int[] actual = result.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH);
+			for (int p = 0; p < expected.length; p++)
+				assertEquals("image " + i + " pixel " + p,
+						expected[p] & 0xFFFFFF, actual[p] & 0xFFFFFF);
+		}
+		assertFalse(new File(output, "broken.png").exists());
+		assertFalse(new File(output, "alone.png").exists());
+	}
+
+	@Test(timeout = 10000, expected = IOException.class)
+	public void testMissingDirectory() throws Exception {
+		File root = Files.createTempDirectory("batch").toFile();
+		new BatchBlender(new File(root, "missing"), root, new File(root,
+				"out"), "png").run();
+	}
+
+	@Test
+	public void testBufferPool() {
+		IntBufferPool pool = new IntBufferPool(1);
+		int[] first = pool.acquire(16);
+		int[] second = pool.acquire(16);
+		assertNotSame(first, second);
+		pool.release(first);
+		// beyond maxPerSize: dropped
+		pool.release(second);
+		pool.release(null);
+		assertSame(first, pool.acquire(16));
+		assertNotSame(second, pool.acquire(16));
+		assertEquals(8, pool.acquire(8).length);
+	}
+
+	private static BufferedImage randomImage(long seed) {
+		Random random = new Random(seed);
+		BufferedImage img = new BufferedImage(WIDTH, HEIGHT,
+				BufferedImage.TYPE_INT_RGB);
+		int[] pixels = ImagePixels.of(img);
+		for (int i = 0; i < pixels.length; i++)
+			pixels[i] = random.nextInt();
+		return img;
+	}
+}
@@ -0,0 +1,101 @@
+package blender;
+
+import static org.junit.Assert.*;
+
+import java.awt.Color;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link BlendKernel} and {@link BlendMode#LINEAR} against the
+ * original per-channel blend through {@link Color}.
+ */
+
+public class BlendKernelTest {
+	private static final int PIXELS = 10000;
+
+	@Test
+	public void testExactWeights() {
+		// multiples of 1/256: the same pixels as the original formula
+		for (double weight : new double[] { 0, 0.125, 0.25, 0.5, 0.75, 1 })
+			test(weight, 0);
+	}
+
+	@Test
+	public void testRoundedWeights() {
+		// rounded down to a multiple of 1/256: a channel is off by at most 1
+		for (double weight : new double[] { 0.1, 0.3, 0.6, 0.9 })
+			test(weight, 1);
+	}
+
+	@Test
+	public void testOffsets() {
+		int[] src1 = randomPixels(1), src2 = randomPixels(2);
+		int[] dst = new int[PIXELS];
+		int weight = BlendKernel.fixedWeight(0.4);
+		BlendKernel.blendRow(src1, 3, src2, 5, dst, 7, PIXELS - 7, weight);
+		for (int i = 0; i < 7; i++)
+			assertEquals(0, dst[i]);
+		for (int i = 7; i < PIXELS; i++)
+			assertEquals(BlendKernel.blend(src1[i - 4], src2[i - 2], weight),
+					dst[i]);
+	}
+
+	/**
+	 * Compare {@link BlendKernel#blend}, {@link BlendKernel#blendRow} and
+	 * {@link BlendMode#LINEAR} at <code>weight</code> against the original
+	 * formula, allowing <code>tolerance</code> per channel.
+	 */
+	private static void test(double weight, int tolerance) {
+		int[] src1 = randomPixels(Double.doubleToLongBits(weight));
+		int[] src2 = randomPixels(~Double.doubleToLongBits(weight));
+		int fixedWeight = BlendKernel.fixedWeight(weight);
+		int[] row = new int[PIXELS];
+		BlendKernel.blendRow(src1, 0, src2, 0, row, 0, PIXELS, fixedWeight);
+		int[] linear = new int[PIXELS];
+		BlendMode.LINEAR.prepare(fixedWeight);
+		BlendMode.LINEAR.blendRow(src1, 0, src2, 0, linear, 0, PIXELS,
+				fixedWeight);
+
+		for (int i = 0; i < PIXELS; i++) {
+			int expected = original(src1[i], src2[i], weight);
+			int pixel = BlendKernel.blend(src1[i], src2[i], fixedWeight);
+			String message = "weight " + weight + " pixel " + i;
+			assertEquals(message, row[i], pixel);
+			assertEquals(message, linear[i], pixel);
+			assertEquals(message, 0xFF, pixel >>> 24);
+			for (int shift = 0; shift <= 16; shift += 8)
+				assertEquals(message, expected >> shift & 0xFF, pixel >> shift
+						& 0xFF, tolerance);
+		}
+	}
+
+	/**
+	 * The blend every implementation computed per pixel before
+	 * {@link BlendKernel}.
+	 */
+	private static int original(int rgb1, int rgb2, double weight) {
+		int r1 = (rgb1 >> 16) & 255;
+		int g1 = (rgb1 >> 8) & 255;
+		int b1 = rgb1 & 255;
+
+		int r2 = (rgb2 >> 16) & 255;
+		int g2 = (rgb2 >> 8) & 255;
+		int b2 = rgb2 & 255;
+
+		int r3 = (int) (r1 * weight + r2 * (1.0 - weight));
+		int g3 = (int) (g1 * weight + g2 * (1.0 - weight));
+		int b3 = (int) (b1 * weight + b2 * (1.0 - weight));
+
+		return new Color(r3, g3, b3).getRGB();
+	}
+
+	private static int[] randomPixels(long seed) {
+		Random random = new Random(seed);
+		int[] pixels = new int[PIXELS];
+		for (int i = 0; i < pixels.length; i++)
+			pixels[i] = random.nextInt();
+		return pixels;
+	}
+}
@@ -0,0 +1,214 @@
+package blender;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+/**
+ * A headless command-line benchmark for the Blender implementations.<br/>
+ *
+ * Usage:
+ * <code>java blender.BlenderBenchmark [options] [image1 image2]</code>
+ *
+ * <pre>
+ *   -engine NAME  Sequential, Threads, Pool, ForkJoin, Parallel, Progressive
+ *                 or all (default: all)
+ *   -runs N       timed runs per engine (default: 20)
+ *   -warmup N     untimed runs before them (default: 10)
+ *   -mode MODE    a BlendMode (default: LINEAR)
+ *   -weight W     the share of the first image (default: 0.5)
+ *   -tiles        also compare the tiled engines with the row-partitioned
+ *                 ones of blender.solutions, and the ForkJoin engine across
+ *                 tile sizes
+ * </pre>
+ *
+ * Without images, it blends two random 4K (3840x2160) images. For each engine,
+ * it reports the latency percentiles of the timed runs, the median throughput
+ * in megapixels per second and the memory bandwidth it implies (two pixels
+ * read and one written per output pixel).
+ */
+
+public class BlenderBenchmark {
+	private static final String[] ENGINES = { "Sequential", "Threads",
+			"Pool", "ForkJoin", "Parallel", "Progressive" };
+	private static final int WIDTH = 3840;
+	private static final int HEIGHT = 2160;
+	private static final int WIDE = 32768;
+	private static final int SHORT = 256;
+
+	private static int warmup = 10;
+	private static int runs = 20;
+	private static BlendMode mode = BlendMode.LINEAR;
+	private static double weight = 0.5;
+
+	public static void main(String[] args) throws Exception {
+		String engine = "all";
+		boolean tiles = false;
+		String[] images = new String[0];
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-engine"))
+				engine = args[++i];
+			else if (args[i].equals("-runs"))
+				runs = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-warmup"))
+				warmup = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-mode"))
+				mode = BlendMode.valueOf(args[++i]);
+			else if (args[i].equals("-weight"))
+				weight = Double.parseDouble(args[++i]);
+			else if (args[i].equals("-tiles"))
+				tiles = true;
+			else if (args[i].startsWith("-"))
+				usage("unknown option " + args[i]);
+			else {
+				images = Arrays.copyOfRange(args, i, args.length);
+				break;
+			}
+		}
+		if (images.length != 0 && images.length != 2)
+			usage("expected two images");
+		if (runs < 1)
+			usage("expected at least one run");
+		if (!engine.equals("all") && !Arrays.asList(ENGINES).contains(engine))
+			usage("unknown engine " + engine);
+
+		BufferedImage img1, img2;
+		if (images.length == 2) {
+			img1 = read(images[0]);
+			img2 = read(images[1]);
+			if (img1.getWidth() > img2.getWidth()
+					|| img1.getHeight() > img2.getHeight())
+				usage("the second image is smaller than the first one");
+		} else {
+			img1 = randomImage(WIDTH, HEIGHT, 1);
+			img2 = randomImage(WIDTH, HEIGHT, 2);
+		}
+		int[] imageBuffer = new int[img1.getWidth() * img1.getHeight()];
+
+		System.out.printf("%dx%d, %s, weight %.2f, %d runs after %d warm-up"
+				+ " runs\n", img1.getWidth(), img1.getHeight(), mode, weight,
+				runs, warmup);
+		System.out.printf("%-14s %9s %9s %9s %9s %10s %9s\n", "", "min",
+				"p50", "p90", "p99", "MP/s", "GB/s");
+		for (String name : ENGINES)
+			if (engine.equals("all") || engine.equals(name))
+				benchmark(name, engine(name, img1, img2, imageBuffer));
+
+		if (tiles) {
+			System.out.println("\nRows vs. tiles, " + img1.getWidth() + "x"
+					+ img1.getHeight());
+			compare(img1, img2);
+			System.out.println("\nRows vs. tiles, " + WIDE + "x" + SHORT);
+			compare(randomImage(WIDE, SHORT, 1), randomImage(WIDE, SHORT, 2));
+
+			System.out.println("\nTile sizes, ForkJoin");
+			int[][] sizes = { { 128, 128 }, { 256, 256 }, { 1024, 64 },
+					{ 2048, 32 }, { img1.getWidth(), 16 }, { 0, 0 } };
+			for (int[] size : sizes) {
+				Blender blender = engine("ForkJoin", img1, img2, imageBuffer);
+				blender.setTileSize(size[0], size[1]);
+				Tiles t = blender.tiles();
+				benchmark((size[0] == 0 ? "auto " : "") + t.tileWidth() + "x"
+						+ t.tileHeight(), blender);
+			}
+		}
+		System.exit(0);
+	}
+
+	private static void usage(String message) {
+		System.err.println(message);
+		System.err.println("Usage: BlenderBenchmark [-engine NAME] [-runs N]"
+				+ " [-warmup N] [-mode MODE] [-weight W] [-tiles]"
+				+ " [image1 image2]");
+		System.exit(1);
+	}
+
+	/**
+	 * A headless instance of blender.Blender<code>name</code>.
+	 */
+	private static Blender engine(String name, BufferedImage img1,
+			BufferedImage img2, int[] imageBuffer) throws Exception {
+		Blender blender = (Blender) Class.forName("blender.Blender" + name)
+				.getConstructor(BufferedImage.class, BufferedImage.class,
+						int[].class).newInstance(img1, img2, imageBuffer);
+		blender.setMode(mode);
+		blender.setWeight(weight);
+		return blender;
+	}
+
+	private static void compare(BufferedImage img1, BufferedImage img2)
+			throws Exception {
+		int[] imageBuffer = new int[img1.getWidth() * img1.getHeight()];
+
+		benchmark("Threads rows", solution(new blender.solutions.BlenderThreads(
+				img1, img2, imageBuffer, null)));
+		benchmark("Threads", engine("Threads", img1, img2, imageBuffer));
+		benchmark("Pool rows", solution(new blender.solutions.BlenderPool(
+				img1, img2, imageBuffer, null)));
+		benchmark("Pool", engine("Pool", img1, img2, imageBuffer));
+		benchmark("ForkJoin rows", solution(new blender.solutions.BlenderForkJoin(
+				img1, img2, imageBuffer, null)));
+		benchmark("ForkJoin", engine("ForkJoin", img1, img2, imageBuffer));
+	}
+
+	/**
+	 * The exercise solutions only take an image source; run them headless.
+	 */
+	private static Blender solution(Blender blender) {
+		blender.setProgressSink(null);
+		blender.setMode(mode);
+		blender.setWeight(weight);
+		return blender;
+	}
+
+	private static void benchmark(String version, Blender blender) {
+		for (int i = 0; i < warmup; i++)
+			blender.process();
+
+		long[] times = new long[runs];
+		for (int i = 0; i < runs; i++) {
+			long start = System.nanoTime();
+			blender.process();
+			times[i] = System.nanoTime() - start;
+		}
+		Arrays.sort(times);
+
+		double pixels = (double) blender.width * blender.height;
+		long median = percentile(times, 50);
+		System.out.printf("%-14s %7.2fms %7.2fms %7.2fms %7.2fms %10.1f %9.2f\n",
+				version, times[0] / 1e6, median / 1e6,
+				percentile(times, 90) / 1e6, percentile(times, 99) / 1e6,
+				pixels / median * 1e3, pixels * 3 * 4 / median);
+	}
+
+	/**
+	 * The nearest-rank percentile of the sorted <code>times</code>.
+	 */
+	private static long percentile(long[] times, int percent) {
+		int rank = (int) Math.ceil(percent / 100.0 * times.length);
+		return times[Math.max(rank, 1) - 1];
+	}
+
+	private static BufferedImage read(String path) throws IOException {
+		BufferedImage img = ImageIO.read(new File(path));
+		if (img == null)
+			usage("cannot read " + path);
+		return img;
+	}
+
+	private static BufferedImage randomImage(int width, int height, long seed) {
+		BufferedImage img = new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_RGB);
+		int[] pixels = ((DataBufferInt) img.getRaster().getDataBuffer())
+				.getData();
+		Random random = new Random(seed);
+		for (int i = 0; i < pixels.length; i++)
+			pixels[i] = random.nextInt() & 0xFFFFFF;
+		return img;
+	}
+}
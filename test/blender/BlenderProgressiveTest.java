@@ -0,0 +1,102 @@
+package blender;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link BlenderProgressive}: its final image against
+ * {@link BlenderSequential}, and what a cancelled run reports.
+ */
+
+public class BlenderProgressiveTest {
+	// three pyramid levels, so one preview before the full resolution
+	private static final int WIDTH = 300, HEIGHT = 70;
+
+	@Test(timeout = 10000)
+	public void testMatchesSequential() {
+		BufferedImage img1 = randomImage(1), img2 = randomImage(2);
+		for (BlendMode mode : new BlendMode[] { BlendMode.LINEAR,
+				BlendMode.SCREEN }) {
+			int[] expected = new int[WIDTH * HEIGHT];
+			Blender sequential = new BlenderSequential(img1, img2, expected);
+			sequential.setMode(mode);
+			sequential.setWeight(0.3);
+			sequential.run();
+
+			int[] actual = new int[WIDTH * HEIGHT];
+			Blender progressive = new BlenderProgressive(img1, img2, actual);
+			progressive.setMode(mode);
+			progressive.setWeight(0.3);
+			progressive.run();
+			assertArrayEquals(mode.toString(), expected, actual);
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testCancelledRunReportsNothing() {
+		final BlenderProgressive blender = new BlenderProgressive(
+				randomImage(3), randomImage(4), new int[WIDTH * HEIGHT]);
+		// the first run builds the pyramids
+		blender.run();
+
+		// then cancel the next run while it blends its preview
+		final AtomicInteger invoked = new AtomicInteger();
+		ForkJoinPool pool = new ForkJoinPool(2) {
+			@Override
+			public <T> T invoke(ForkJoinTask<T> task) {
+				T result = super.invoke(task);
+				if (invoked.incrementAndGet() == 1)
+					blender.cancel();
+				return result;
+			}
+		};
+		final AtomicInteger regions = new AtomicInteger();
+		final AtomicInteger finished = new AtomicInteger();
+		blender.setProgressSink(new ProgressSink() {
+			@Override
+			public void blendStarted() {
+			}
+
+			@Override
+			public void regionDone(int x, int y, int width, int height) {
+				regions.incrementAndGet();
+			}
+
+			@Override
+			public void blendFinished() {
+				finished.incrementAndGet();
+			}
+		});
+		blender.setPool(pool);
+		try {
+			blender.run();
+		} finally {
+			pool.shutdown();
+		}
+		assertEquals("invocations", 1, invoked.get());
+		assertEquals("regions", 0, regions.get());
+		assertEquals("finished", 1, finished.get());
+
+		// the next run is not cancelled
+		blender.setPool(null);
+		blender.run();
+		assertTrue(regions.get() > 1);
+	}
+
+	private static BufferedImage randomImage(long seed) {
+		Random random = new Random(seed);
+		BufferedImage img = new BufferedImage(WIDTH, HEIGHT,
+				BufferedImage.TYPE_INT_RGB);
+		int[] pixels = ImagePixels.of(img);
+		for (int i = 0; i < pixels.length; i++)
+			pixels[i] = random.nextInt();
+		return img;
+	}
+}
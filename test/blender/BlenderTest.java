@@ -14,13 +14,21 @@ import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.imageio.ImageIO;
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
+import javax.swing.JComboBox;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.JSlider;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 
 import util.StopWatch;
 import util.UnimplementedExercise;
@@ -51,8 +59,16 @@ public class BlenderTest extends JFrame {
 	public ImageIcon icon;
 
 	private int[] resultBuffer;
+	private JComboBox<BlendMode> modeBox;
+	private JSlider weightSlider;
 	private MemoryImageSource resultImageSource;
 
+	// one slider run at a time, as runs share the StopWatch; a newer event
+	// replaces the one waiting, since every run reads the latest weight
+	private final ExecutorService sliderRuns = new ThreadPoolExecutor(1, 1,
+			0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(1),
+			new ThreadPoolExecutor.DiscardOldestPolicy());
+
 	public BlenderTest() {
 		super("Blender");
 
@@ -103,7 +119,16 @@ public class BlenderTest extends JFrame {
 	private JPanel getInfoPanel() {
 
 		JPanel infoPanel = new JPanel();
-		infoPanel.setLayout(new GridLayout(5, 1));
+		infoPanel.setLayout(new GridLayout(7, 1));
+
+		JPanel modePanel = new JPanel();
+		modePanel.add(new JLabel("Blend mode"));
+		modeBox = new JComboBox<BlendMode>(BlendMode.values());
+		modePanel.add(modeBox);
+		modePanel.add(new JLabel("Weight"));
+		weightSlider = new JSlider(0, 100, 50);
+		modePanel.add(weightSlider);
+		infoPanel.add(modePanel);
 
 		// Sequential
 		Blender sequentialBlender = new BlenderSequential(img1, img2,
@@ -129,6 +154,19 @@ public class BlenderTest extends JFrame {
 				resultImageSource);
 		infoPanel.add(getPanelFor("Parallel", parallelBlender));
 
+		// re-blends right away as the weight slider moves, cancelling the
+		// previous run
+		final Blender progressiveBlender = new BlenderProgressive(img1, img2,
+				resultBuffer, resultImageSource);
+		infoPanel.add(getPanelFor("Progressive", progressiveBlender));
+		weightSlider.addChangeListener(new ChangeListener() {
+			@Override
+			public void stateChanged(ChangeEvent e) {
+				progressiveBlender.setWeight(weightSlider.getValue() / 100.0);
+				sliderRuns.execute(progressiveBlender);
+			}
+		});
+
 		return infoPanel;
 	}
 
@@ -208,6 +246,8 @@ public class BlenderTest extends JFrame {
 		@Override
 		public void actionPerformed(ActionEvent arg0) {
 			resetResultsPanel();
+			blenderProcess.setMode((BlendMode) modeBox.getSelectedItem());
+			blenderProcess.setWeight(weightSlider.getValue() / 100.0);
 			this.blenderProcess
 					.addPropertyChangeListener(new PropertyChangeListener() {
 						@Override
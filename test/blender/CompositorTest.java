@@ -0,0 +1,84 @@
+package blender;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link Compositor} against a chain of {@link Blender} runs, each
+ * at weight 1 - opacity and blending over the output of the previous one.
+ */
+
+public class CompositorTest {
+	private static final int WIDTH = 203, HEIGHT = 61;
+
+	private static final BlendMode[] MODES = { BlendMode.LINEAR,
+			BlendMode.LINEAR_LIGHT, BlendMode.MULTIPLY, BlendMode.ALPHA_OVER,
+			BlendMode.SCREEN, BlendMode.OVERLAY, BlendMode.DIFFERENCE };
+	private static final double[] OPACITIES = { 0.5, 0.3, 0.8, 0.6, 1, 0.25,
+			0 };
+
+	@Test
+	public void testMatchesBlenderChain() {
+		test(0, 0);
+	}
+
+	@Test
+	public void testSmallTiles() {
+		// tiles cut by the right and bottom edges
+		test(17, 5);
+	}
+
+	@Test
+	public void testNoLayers() {
+		BufferedImage base = randomImage(WIDTH, HEIGHT, 0, false);
+		int[] result = new int[WIDTH * HEIGHT];
+		new Compositor(base, result).run();
+		assertArrayEquals(ImagePixels.of(base), result);
+	}
+
+	private void test(int tileWidth, int tileHeight) {
+		BufferedImage base = randomImage(WIDTH, HEIGHT, 0, false);
+		BufferedImage[] images = new BufferedImage[MODES.length];
+		for (int i = 0; i < MODES.length; i++)
+			// every other layer is larger than the base, and the alpha
+			// layer has an alpha channel
+			images[i] = randomImage(WIDTH + (i % 2) * 9, HEIGHT + (i % 3) * 2,
+					i + 1, MODES[i] == BlendMode.ALPHA_OVER);
+
+		int[] result = new int[WIDTH * HEIGHT];
+		Compositor compositor = new Compositor(base, result);
+		compositor.setTileSize(tileWidth, tileHeight);
+		for (int i = 0; i < MODES.length; i++)
+			compositor.addLayer(images[i], MODES[i], OPACITIES[i]);
+		compositor.run();
+
+		BufferedImage below = base;
+		int[] expected = null;
+		for (int i = 0; i < MODES.length; i++) {
+			expected = new int[WIDTH * HEIGHT];
+			Blender blender = new BlenderSequential(below, images[i], expected);
+			blender.setMode(MODES[i]);
+			blender.setWeight(1 - OPACITIES[i]);
+			blender.run();
+			below = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+			System.arraycopy(expected, 0, ImagePixels.of(below), 0,
+					expected.length);
+		}
+		assertArrayEquals(expected, result);
+	}
+
+	private static BufferedImage randomImage(int width, int height, long seed,
+			boolean alpha) {
+		Random random = new Random(seed);
+		BufferedImage img = new BufferedImage(width, height,
+				alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+		int[] pixels = ImagePixels.of(img);
+		for (int i = 0; i < pixels.length; i++)
+			pixels[i] = random.nextInt();
+		return img;
+	}
+}
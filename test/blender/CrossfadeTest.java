@@ -0,0 +1,117 @@
+package blender;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link Crossfade}: its frames against {@link Blender} runs at the
+ * same weights, and the failures of its consumers.
+ */
+
+public class CrossfadeTest {
+	private static final int WIDTH = 203, HEIGHT = 61, FRAMES = 19;
+
+	@Test
+	public void testFramesMatchBlender() throws Exception {
+		// ALPHA_OVER: both images are opaque, so it falls back to LINEAR
+		for (BlendMode mode : new BlendMode[] { BlendMode.LINEAR,
+				BlendMode.LINEAR_LIGHT, BlendMode.SCREEN, BlendMode.ALPHA_OVER })
+			testFrames(mode);
+	}
+
+	private void testFrames(BlendMode mode) throws Exception {
+		BufferedImage img1 = randomImage(WIDTH, HEIGHT, 1);
+		// wider than the first image
+		BufferedImage img2 = randomImage(WIDTH + 5, HEIGHT, 2);
+		final List<Integer> indexes = new ArrayList<Integer>();
+		final List<int[]> frames = new ArrayList<int[]>();
+		Crossfade crossfade = new Crossfade(img1, img2);
+		crossfade.setMode(mode);
+		crossfade.run(FRAMES, new Crossfade.FrameConsumer() {
+			@Override
+			public void frame(int index, int[] pixels, int width, int height) {
+				assertEquals(WIDTH, width);
+				assertEquals(HEIGHT, height);
+				indexes.add(index);
+				// the buffer is reused once this returns
+				frames.add(pixels.clone());
+			}
+		});
+
+		assertEquals(FRAMES, frames.size());
+		for (int i = 0; i < FRAMES; i++) {
+			// a single consumer sees the frames in order
+			assertEquals(i, (int) indexes.get(i));
+			int[] expected = new int[WIDTH * HEIGHT];
+			Blender blender = new BlenderSequential(img1, img2, expected);
+			blender.setMode(mode);
+			blender.setWeight(Crossfade.weight(i, FRAMES));
+			blender.run();
+			assertArrayEquals(mode + " frame " + i, expected, frames.get(i));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNoConsumers() {
+		new Crossfade(randomImage(WIDTH, HEIGHT, 5), randomImage(WIDTH,
+				HEIGHT, 6)).setConsumers(0);
+	}
+
+	@Test(timeout = 10000)
+	public void testCheckedFailure() throws Exception {
+		try {
+			run(64, new IOException("disk full"));
+			fail("no exception");
+		} catch (IOException e) {
+			assertEquals("disk full", e.getMessage());
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testUncheckedFailure() throws Exception {
+		try {
+			run(64, new IllegalStateException("encoder broke"));
+			fail("no exception");
+		} catch (IllegalStateException e) {
+			assertEquals("encoder broke", e.getMessage());
+		}
+	}
+
+	/**
+	 * Run a crossfade whose consumer throws <code>failure</code> at the
+	 * third frame.
+	 */
+	private static void run(int frames, final Exception failure)
+			throws Exception {
+		Crossfade crossfade = new Crossfade(randomImage(WIDTH, HEIGHT, 3),
+				randomImage(WIDTH, HEIGHT, 4));
+		crossfade.run(frames, new Crossfade.FrameConsumer() {
+			@Override
+			public void frame(int index, int[] pixels, int width, int height)
+					throws IOException {
+				if (index == 2) {
+					if (failure instanceof IOException)
+						throw (IOException) failure;
+					throw (RuntimeException) failure;
+				}
+			}
+		});
+	}
+
+	private static BufferedImage randomImage(int width, int height, long seed) {
+		Random random = new Random(seed);
+		BufferedImage img = new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_RGB);
+		int[] pixels = ImagePixels.of(img);
+		for (int i = 0; i < pixels.length; i++)
+			pixels[i] = random.nextInt();
+		return img;
+	}
+}
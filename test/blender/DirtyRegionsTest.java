@@ -0,0 +1,137 @@
+package blender;
+
+import static org.junit.Assert.*;
+
+import java.awt.Rectangle;
+import java.awt.image.MemoryImageSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link DirtyRegions}: the rectangles its flushes send for regions
+ * marked from several threads at once.
+ */
+
+public class DirtyRegionsTest {
+	private static final int WIDTH = 97, HEIGHT = 61;
+	private static final int THREADS = 4, REGIONS = 2000;
+
+	/**
+	 * Records the rectangles of every <code>newPixels</code> call.
+	 */
+	private static class RecordingSource extends MemoryImageSource {
+		final List<Rectangle> sent = new ArrayList<Rectangle>();
+
+		RecordingSource() {
+			super(WIDTH, HEIGHT, new int[WIDTH * HEIGHT], 0, WIDTH);
+		}
+
+		@Override
+		public synchronized void newPixels(int x, int y, int w, int h,
+				boolean framenotify) {
+			sent.add(new Rectangle(x, y, w, h));
+		}
+	}
+
+	@Test
+	public void testMergesAdjacentRows() {
+		List<Rectangle> regions = new ArrayList<Rectangle>();
+		for (int row = 0; row < HEIGHT; row++)
+			DirtyRegions.merge(regions, new Rectangle(0, row, WIDTH, 1));
+		assertEquals(1, regions.size());
+		assertEquals(new Rectangle(0, 0, WIDTH, HEIGHT), regions.get(0));
+	}
+
+	@Test
+	public void testMergesOverlapping() {
+		List<Rectangle> regions = new ArrayList<Rectangle>();
+		DirtyRegions.merge(regions, new Rectangle(0, 0, 10, 10));
+		DirtyRegions.merge(regions, new Rectangle(20, 0, 10, 10));
+		// overlaps the first one, so the two are sent as one
+		DirtyRegions.merge(regions, new Rectangle(5, 5, 10, 10));
+		assertEquals(2, regions.size());
+		assertEquals(new Rectangle(0, 0, 15, 15), regions.get(1));
+	}
+
+	@Test(timeout = 30000)
+	public void testConcurrentMarksFlushedOnce() throws Exception {
+		RecordingSource source = new RecordingSource();
+		final DirtyRegions dirty = new DirtyRegions(source);
+		final Rectangle[][] marked = new Rectangle[THREADS][REGIONS];
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] threads = new Thread[THREADS];
+		for (int t = 0; t < THREADS; t++) {
+			final Rectangle[] regions = marked[t];
+			Random random = new Random(t);
+			for (int i = 0; i < REGIONS; i++) {
+				if (i % 2 == 0) {
+					// rows and tiles, adjacent to the ones of other threads
+					int row = i / 2 % HEIGHT;
+					regions[i] = t % 2 == 0 ? new Rectangle(0, row, WIDTH, 1)
+							: new Rectangle(row % 8 * 12, row / 8 * 8, 12,
+									Math.min(8, HEIGHT - row / 8 * 8));
+				} else {
+					// anywhere, overlapping the others
+					int x = random.nextInt(WIDTH), y = random.nextInt(HEIGHT);
+					regions[i] = new Rectangle(x, y, 1 + random.nextInt(WIDTH
+							- x), 1 + random.nextInt(HEIGHT - y));
+				}
+			}
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (Rectangle r : regions)
+						dirty.regionDone(r.x, r.y, r.width, r.height);
+				}
+			};
+			threads[t].start();
+		}
+
+		boolean running = true;
+		int[] flushed = new int[WIDTH * HEIGHT];
+		int flushes = 0;
+		start.countDown();
+		while (running) {
+			boolean alive = false;
+			for (Thread thread : threads)
+				alive |= thread.isAlive();
+			// one last flush after all the marks
+			running = alive;
+			dirty.flush();
+			flushes++;
+
+			int[] covered = new int[WIDTH * HEIGHT];
+			synchronized (source) {
+				for (Rectangle r : source.sent)
+					for (int y = r.y; y < r.y + r.height; y++)
+						for (int x = r.x; x < r.x + r.width; x++)
+							covered[y * WIDTH + x]++;
+				source.sent.clear();
+			}
+			for (int i = 0; i < covered.length; i++) {
+				assertTrue("flush " + flushes + " pixel " + i,
+						covered[i] <= 1);
+				flushed[i] += covered[i];
+			}
+		}
+
+		for (Rectangle[] regions : marked)
+			for (Rectangle r : regions)
+				for (int y = r.y; y < r.y + r.height; y++)
+					for (int x = r.x; x < r.x + r.width; x++)
+						assertTrue("pixel " + x + "," + y,
+								flushed[y * WIDTH + x] > 0);
+		// nothing is left to flush
+		dirty.flush();
+		assertTrue(source.sent.isEmpty());
+	}
+}
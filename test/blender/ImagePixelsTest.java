@@ -0,0 +1,88 @@
+package blender;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link ImagePixels}: the backing arrays of int images, and the
+ * conversion of the others.
+ */
+
+public class ImagePixelsTest {
+	private static final int WIDTH = 37, HEIGHT = 23;
+
+	@Test
+	public void testIntRGB() {
+		testBackingArray(BufferedImage.TYPE_INT_RGB);
+	}
+
+	@Test
+	public void testIntARGB() {
+		testBackingArray(BufferedImage.TYPE_INT_ARGB);
+	}
+
+	@Test
+	public void testSubimage() {
+		BufferedImage img = randomImage(BufferedImage.TYPE_INT_RGB, 1);
+		BufferedImage sub = img.getSubimage(3, 2, WIDTH - 5, HEIGHT - 4);
+		assertNull(ImagePixels.backingArray(sub));
+		assertPacked(sub, ImagePixels.of(sub));
+	}
+
+	@Test
+	public void test3ByteBGR() {
+		testConverted(BufferedImage.TYPE_3BYTE_BGR);
+	}
+
+	@Test
+	public void testByteGray() {
+		testConverted(BufferedImage.TYPE_BYTE_GRAY);
+	}
+
+	private static void testBackingArray(int type) {
+		BufferedImage img = randomImage(type, type);
+		int[] pixels = ImagePixels.of(img);
+		assertSame(((DataBufferInt) img.getRaster().getDataBuffer()).getData(),
+				pixels);
+		assertPacked(img, pixels);
+		// live: writes through the array show in the image
+		pixels[WIDTH + 1] = 0xFF123456;
+		assertEquals(0xFF123456, img.getRGB(1, 1));
+	}
+
+	private static void testConverted(int type) {
+		BufferedImage img = randomImage(type, type);
+		assertNull(ImagePixels.backingArray(img));
+		int[] pixels = ImagePixels.of(img);
+		assertPacked(img, pixels);
+		// a copy: later changes to the image do not show in it
+		int before = pixels[0];
+		img.setRGB(0, 0, ~img.getRGB(0, 0));
+		assertEquals(before, pixels[0]);
+	}
+
+	private static void assertPacked(BufferedImage img, int[] pixels) {
+		int width = img.getWidth();
+		assertTrue(pixels.length >= width * img.getHeight());
+		for (int y = 0; y < img.getHeight(); y++)
+			for (int x = 0; x < width; x++)
+				// the alpha byte is undefined
+				assertEquals("pixel " + x + "," + y,
+						img.getRGB(x, y) & 0xFFFFFF,
+						pixels[y * width + x] & 0xFFFFFF);
+	}
+
+	private static BufferedImage randomImage(int type, long seed) {
+		Random random = new Random(seed);
+		BufferedImage img = new BufferedImage(WIDTH, HEIGHT, type);
+		for (int y = 0; y < HEIGHT; y++)
+			for (int x = 0; x < WIDTH; x++)
+				img.setRGB(x, y, random.nextInt());
+		return img;
+	}
+}
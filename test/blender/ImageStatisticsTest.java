@@ -0,0 +1,164 @@
+package blender;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link ImageStatistics} and {@link ImageComparison} against
+ * straightforward loops over the whole image.
+ */
+
+public class ImageStatisticsTest {
+	// not multiples of 8, so that the edge blocks are left out of the SSIM
+	private static final int WIDTH = 301, HEIGHT = 203;
+
+	@Test
+	public void testStatistics() {
+		BufferedImage img = randomImage(WIDTH, HEIGHT, 1);
+		int[] pixels = ImagePixels.of(img);
+		ImageStatistics statistics = ImageStatistics.of(img);
+
+		assertEquals(WIDTH * HEIGHT, statistics.pixels());
+		for (int c = 0; c < 3; c++) {
+			int shift = 16 - 8 * c;
+			long[] histogram = new long[256];
+			int min = 255, max = 0;
+			long sum = 0;
+			for (int rgb : pixels) {
+				int v = (rgb >> shift) & 255;
+				histogram[v]++;
+				min = Math.min(min, v);
+				max = Math.max(max, v);
+				sum += v;
+			}
+			assertArrayEquals(histogram, statistics.histogram(c));
+			assertEquals(min, statistics.min(c));
+			assertEquals(max, statistics.max(c));
+			assertEquals((double) sum / pixels.length, statistics.mean(c), 1e-9);
+		}
+	}
+
+	@Test
+	public void testComparison() {
+		BufferedImage img = randomImage(WIDTH, HEIGHT, 2);
+		// wider and higher than the image
+		BufferedImage reference = randomImage(WIDTH + 7, HEIGHT + 3, 3);
+		int[] pixels = ImagePixels.of(img);
+		int[] referencePixels = ImagePixels.of(reference);
+		int referenceWidth = reference.getWidth();
+		int[] difference = new int[WIDTH * HEIGHT];
+		ImageComparison comparison = ImageComparison.of(img, reference,
+				difference);
+
+		long[] squaredErrors = new long[3];
+		for (int y = 0; y < HEIGHT; y++)
+			for (int x = 0; x < WIDTH; x++) {
+				int rgb1 = pixels[y * WIDTH + x];
+				int rgb2 = referencePixels[y * referenceWidth + x];
+				int expected = 0xFF000000;
+				for (int c = 0; c < 3; c++) {
+					int shift = 16 - 8 * c;
+					int d = ((rgb1 >> shift) & 255) - ((rgb2 >> shift) & 255);
+					squaredErrors[c] += d * d;
+					expected |= Math.abs(d) << shift;
+				}
+				assertEquals(expected, difference[y * WIDTH + x]);
+			}
+		long n = WIDTH * HEIGHT;
+		for (int c = 0; c < 3; c++) {
+			assertEquals((double) squaredErrors[c] / n, comparison.mse(c), 1e-9);
+			assertEquals(10 * Math.log10(255 * 255 / ((double) squaredErrors[c] / n)),
+					comparison.psnr(c), 1e-9);
+		}
+		double mse = (double) (squaredErrors[0] + squaredErrors[1] + squaredErrors[2])
+				/ (3 * n);
+		assertEquals(mse, comparison.mse(), 1e-9);
+		assertEquals(ssim(pixels, WIDTH, referencePixels, referenceWidth),
+				comparison.ssim(), 1e-12);
+	}
+
+	@Test
+	public void testIdentical() {
+		BufferedImage img = randomImage(WIDTH, HEIGHT, 4);
+		ImageComparison comparison = ImageComparison.of(img, img, null);
+		assertEquals(0, comparison.mse(), 0);
+		assertEquals(Double.POSITIVE_INFINITY, comparison.psnr(), 0);
+		assertEquals(1, comparison.ssim(), 1e-12);
+	}
+
+	@Test
+	public void testConstantOffset() {
+		Random random = new Random(5);
+		BufferedImage img = new BufferedImage(WIDTH, HEIGHT,
+				BufferedImage.TYPE_INT_RGB);
+		BufferedImage reference = new BufferedImage(WIDTH, HEIGHT,
+				BufferedImage.TYPE_INT_RGB);
+		int[] pixels = ImagePixels.of(img);
+		int[] referencePixels = ImagePixels.of(reference);
+		for (int i = 0; i < pixels.length; i++) {
+			// channels below 246, and 10 more in the reference
+			pixels[i] = random.nextInt(246) << 16 | random.nextInt(246) << 8
+					| random.nextInt(246);
+			referencePixels[i] = pixels[i] + 0x0A0A0A;
+		}
+		ImageComparison comparison = ImageComparison.of(img, reference, null);
+		for (int c = 0; c < 3; c++)
+			assertEquals(100, comparison.mse(c), 0);
+		assertEquals(100, comparison.mse(), 0);
+		assertEquals(10 * Math.log10(255 * 255 / 100.0), comparison.psnr(), 1e-9);
+	}
+
+	/**
+	 * The mean SSIM of the luma of the 8x8 blocks that fit the image, block by
+	 * block.
+	 */
+	private static double ssim(int[] pixels1, int width1, int[] pixels2,
+			int width2) {
+		double c1 = (0.01 * 255) * (0.01 * 255);
+		double c2 = (0.03 * 255) * (0.03 * 255);
+		double sum = 0;
+		int blocks = 0;
+		for (int by = 0; by + 8 <= HEIGHT; by += 8)
+			for (int bx = 0; bx + 8 <= WIDTH; bx += 8) {
+				double sum1 = 0, sum2 = 0, squares1 = 0, squares2 = 0, products = 0;
+				for (int y = by; y < by + 8; y++)
+					for (int x = bx; x < bx + 8; x++) {
+						int y1 = luma(pixels1[y * width1 + x]);
+						int y2 = luma(pixels2[y * width2 + x]);
+						sum1 += y1;
+						sum2 += y2;
+						squares1 += y1 * y1;
+						squares2 += y2 * y2;
+						products += y1 * y2;
+					}
+				double mean1 = sum1 / 64, mean2 = sum2 / 64;
+				double variance1 = squares1 / 64 - mean1 * mean1;
+				double variance2 = squares2 / 64 - mean2 * mean2;
+				double covariance = products / 64 - mean1 * mean2;
+				sum += (2 * mean1 * mean2 + c1) * (2 * covariance + c2)
+						/ ((mean1 * mean1 + mean2 * mean2 + c1)
+								* (variance1 + variance2 + c2));
+				blocks++;
+			}
+		return sum / blocks;
+	}
+
+	private static int luma(int rgb) {
+		return (77 * ((rgb >> 16) & 255) + 150 * ((rgb >> 8) & 255) + 29
+				* (rgb & 255) + 128) >> 8;
+	}
+
+	private static BufferedImage randomImage(int width, int height, long seed) {
+		Random random = new Random(seed);
+		BufferedImage img = new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_RGB);
+		int[] pixels = ImagePixels.of(img);
+		for (int i = 0; i < pixels.length; i++)
+			pixels[i] = random.nextInt();
+		return img;
+	}
+}
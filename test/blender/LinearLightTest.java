@@ -0,0 +1,92 @@
+package blender;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link LinearLight}: its mix tables against the per-pixel decode,
+ * mix and encode, and the bound on the tables kept.
+ */
+
+public class LinearLightTest {
+	private static final int PIXELS = 10000;
+
+	@Test
+	public void testMatchesPerPixelFormula() {
+		for (double weight : new double[] { 0, 0.25, 0.5, 0.7, 1 })
+			test(BlendKernel.fixedWeight(weight));
+	}
+
+	@Test
+	public void testRoundTrip() {
+		// at weights 1 and 0, every channel value comes back unchanged
+		int[] src1 = randomPixels(1), src2 = randomPixels(2);
+		int[] dst = new int[PIXELS];
+		LinearLight.blendRow(src1, 0, src2, 0, dst, 0, PIXELS, BlendKernel.ONE);
+		for (int i = 0; i < PIXELS; i++)
+			assertEquals(src1[i] & 0xFFFFFF, dst[i] & 0xFFFFFF);
+		LinearLight.blendRow(src1, 0, src2, 0, dst, 0, PIXELS, 0);
+		for (int i = 0; i < PIXELS; i++)
+			assertEquals(src2[i] & 0xFFFFFF, dst[i] & 0xFFFFFF);
+	}
+
+	@Test
+	public void testMoreWeightsThanTables() {
+		int first = 3;
+		byte[] table = LinearLight.table(first);
+		assertSame(table, LinearLight.table(first));
+		for (int weight = first + 1; weight <= first + LinearLight.MAX_TABLES; weight++)
+			test(weight);
+		// dropped as the oldest, then built again, to the same values
+		byte[] rebuilt = LinearLight.table(first);
+		assertNotSame(table, rebuilt);
+		assertArrayEquals(table, rebuilt);
+		test(first);
+	}
+
+	/**
+	 * Compare a row blended at <code>weight</code> against the decode, mix
+	 * and encode of every channel, and against the exact sRGB formula.
+	 */
+	private static void test(int weight) {
+		int[] src1 = randomPixels(weight), src2 = randomPixels(-weight - 1);
+		int[] dst = new int[PIXELS];
+		LinearLight.blendRow(src1, 0, src2, 0, dst, 0, PIXELS, weight);
+		for (int i = 0; i < PIXELS; i++) {
+			assertEquals(0xFF, dst[i] >>> 24);
+			for (int shift = 0; shift <= 16; shift += 8) {
+				int a = src1[i] >> shift & 255, b = src2[i] >> shift & 255;
+				int c = dst[i] >> shift & 255;
+				int mixed = LinearLight.TO_LINEAR[a] * weight
+						+ LinearLight.TO_LINEAR[b] * (BlendKernel.ONE - weight);
+				assertEquals("weight " + weight + " pixel " + i,
+						LinearLight.TO_SRGB[mixed >>> 12] & 255, c);
+				double exact = encode((decode(a) * weight + decode(b)
+						* (BlendKernel.ONE - weight))
+						/ BlendKernel.ONE);
+				assertEquals("weight " + weight + " pixel " + i, exact, c, 1);
+			}
+		}
+	}
+
+	private static double decode(int v) {
+		double c = v / 255.0;
+		return c <= 0.04045 ? c / 12.92 : Math.pow((c + 0.055) / 1.055, 2.4);
+	}
+
+	private static double encode(double l) {
+		double c = l <= 0.0031308 ? 12.92 * l : 1.055 * Math.pow(l, 1 / 2.4) - 0.055;
+		return c * 255;
+	}
+
+	private static int[] randomPixels(long seed) {
+		Random random = new Random(seed);
+		int[] pixels = new int[PIXELS];
+		for (int i = 0; i < pixels.length; i++)
+			pixels[i] = random.nextInt();
+		return pixels;
+	}
+}
@@ -0,0 +1,156 @@
+package blender;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+/**
+ * Tests for the out-of-core path: {@link RawImage} conversions and checks,
+ * and {@link StreamingBlender} against {@link BlenderSequential}.
+ */
+
+public class StreamingBlenderTest {
+	private static final int WIDTH = 203, HEIGHT = 61;
+	// a few rows per band, so the images take several bands
+	private static final int BAND_BYTES = 4 * WIDTH * 7;
+
+	@Test
+	public void testFromImage() throws Exception {
+		File dir = Files.createTempDirectory("raw").toFile();
+		BufferedImage img = randomImage(1);
+		for (String format : new String[] { "png", "bmp" }) {
+			// PNG is decoded into a MappedDataBuffer, BMP by regions
+			File file = new File(dir, "img." + format);
+			ImageIO.write(img, format, file);
+			File raw = new File(dir, format + ".raw");
+			RawImage.fromImage(file, raw, BAND_BYTES);
+			assertPixels(format, img, raw);
+		}
+	}
+
+	@Test
+	public void testFromImageByRegions() throws Exception {
+		File dir = Files.createTempDirectory("raw").toFile();
+		BufferedImage img = randomImage(2);
+		File png = new File(dir, "img.png");
+		ImageIO.write(img, "png", png);
+		File raw = new File(dir, "img.raw");
+		// as if the image had too many samples for a raster
+		RawImage.fromImage(png, raw, BAND_BYTES, 1000);
+		assertPixels("by regions", img, raw);
+	}
+
+	@Test
+	public void testOpenChecks() throws Exception {
+		File dir = Files.createTempDirectory("raw").toFile();
+		File png = new File(dir, "img.png");
+		ImageIO.write(randomImage(3), "png", png);
+		try {
+			RawImage.open(png);
+			fail("opened a PNG");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("not a raw image"));
+		}
+
+		File raw = new File(dir, "img.raw");
+		RawImage.fromImage(png, raw, BAND_BYTES);
+		RandomAccessFile file = new RandomAccessFile(raw, "rw");
+		try {
+			file.setLength(file.length() - 4);
+		} finally {
+			file.close();
+		}
+		try {
+			RawImage.open(raw);
+			fail("opened a truncated image");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("truncated"));
+		}
+	}
+
+	@Test
+	public void testMatchesBlender() throws Exception {
+		File dir = Files.createTempDirectory("raw").toFile();
+		BufferedImage img1 = randomImage(4), img2 = randomImage(5);
+		File raw1 = raw(dir, "1", img1), raw2 = raw(dir, "2", img2);
+
+		for (BlendMode mode : new BlendMode[] { BlendMode.LINEAR,
+				BlendMode.LINEAR_LIGHT, BlendMode.SCREEN }) {
+			StreamingBlender streaming = new StreamingBlender(3, BAND_BYTES);
+			streaming.setMode(mode);
+			streaming.setWeight(0.3);
+			File output = new File(dir, mode + ".raw");
+			streaming.blend(raw1, raw2, output);
+
+			int[] expected = new int[WIDTH * HEIGHT];
+			Blender blender = new BlenderSequential(img1, img2, expected);
+			blender.setMode(mode);
+			blender.setWeight(0.3);
+			blender.run();
+
+			int[] actual = new int[WIDTH * HEIGHT];
+			RawImage out = RawImage.open(output);
+			try {
+				out.readRows(0, HEIGHT, actual);
+			} finally {
+				out.close();
+			}
+			assertArrayEquals(mode.toString(), expected, actual);
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testDifferentSizes() throws Exception {
+		File dir = Files.createTempDirectory("raw").toFile();
+		File raw1 = raw(dir, "1", randomImage(6));
+		File raw2 = new File(dir, "2.raw");
+		RawImage.create(raw2, WIDTH, HEIGHT + 1).close();
+		new StreamingBlender().blend(raw1, raw2, new File(dir, "out.raw"));
+	}
+
+	private static File raw(File dir, String name, BufferedImage img)
+			throws IOException {
+		File raw = new File(dir, name + ".raw");
+		RawImage out = RawImage.create(raw, WIDTH, HEIGHT);
+		try {
+			out.writeRows(0, HEIGHT, ImagePixels.of(img));
+		} finally {
+			out.close();
+		}
+		return raw;
+	}
+
+	private static void assertPixels(String message, BufferedImage img,
+			File raw) throws IOException {
+		RawImage in = RawImage.open(raw);
+		try {
+			assertEquals(WIDTH, in.width());
+			assertEquals(HEIGHT, in.height());
+			int[] pixels = new int[WIDTH * HEIGHT];
+			in.readRows(0, HEIGHT, pixels);
+			assertArrayEquals(message,
+					img.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH), pixels);
+		} finally {
+			in.close();
+		}
+	}
+
+	private static BufferedImage randomImage(long seed) {
+		Random random = new Random(seed);
+		BufferedImage img = new BufferedImage(WIDTH, HEIGHT,
+				BufferedImage.TYPE_INT_RGB);
+		int[] pixels = ImagePixels.of(img);
+		for (int i = 0; i < pixels.length; i++)
+			pixels[i] = random.nextInt();
+		return img;
+	}
+}
@@ -0,0 +1,53 @@
+package blender;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link Tiles}: the Morton order of the tiles and their coverage
+ * of the image.
+ */
+
+public class TilesTest {
+
+	@Test
+	public void testMortonOrder() {
+		Tiles tiles = new Tiles(40, 40, 10, 10);
+		int[][] expected = { { 0, 0 }, { 1, 0 }, { 0, 1 }, { 1, 1 }, { 2, 0 },
+				{ 3, 0 }, { 2, 1 }, { 3, 1 }, { 0, 2 }, { 1, 2 } };
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals("tile " + i, expected[i][0] * 10, tiles.x(i));
+			assertEquals("tile " + i, expected[i][1] * 10, tiles.y(i));
+		}
+	}
+
+	@Test
+	public void testCoversClippedImage() {
+		testCovers(103, 37, 16, 8);
+	}
+
+	@Test(timeout = 10000)
+	public void testTallGrid() {
+		// more rows than 16 bits can number
+		testCovers(3, 100000, 3, 1);
+	}
+
+	@Test(timeout = 10000)
+	public void testWideGrid() {
+		testCovers(100000, 2, 1, 2);
+	}
+
+	private static void testCovers(int width, int height, int tileWidth,
+			int tileHeight) {
+		Tiles tiles = new Tiles(width, height, tileWidth, tileHeight);
+		int[] covered = new int[width * height];
+		for (int tile = 0; tile < tiles.count(); tile++)
+			for (int y = tiles.y(tile); y < tiles.y(tile) + tiles.height(tile); y++)
+				for (int x = tiles.x(tile); x < tiles.x(tile)
+						+ tiles.width(tile); x++)
+					covered[y * width + x]++;
+		for (int i = 0; i < covered.length; i++)
+			assertEquals("pixel " + i, 1, covered[i]);
+	}
+}
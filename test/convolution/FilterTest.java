@@ -0,0 +1,159 @@
+package convolution;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.junit.Test;
+
+import blender.BlendMode;
+import blender.BlenderSequential;
+
+/**
+ * Tests for the {@link Filter}s against direct two-dimensional convolutions,
+ * and for {@link FilteredBlender} against filtering and blending in turn.
+ */
+
+public class FilterTest {
+	private static final int WIDTH = 301, HEIGHT = 97;
+
+	@Test
+	public void testBox() throws Exception {
+		int[] src = randomImage(WIDTH, HEIGHT, 1);
+		for (Border border : Border.values()) {
+			Filter filter = Filter.box(2);
+			filter.setBorder(border);
+			int[] dst = new int[src.length];
+			filter.apply(src, WIDTH, HEIGHT, dst);
+			// each channel may be rounded once in each pass
+			assertClose(direct(src, WIDTH, HEIGHT, 2, border), dst, 1);
+		}
+	}
+
+	@Test
+	public void testConstantImages() throws Exception {
+		Filter[] filters = { Filter.gaussian(2.5), Filter.box(4),
+				Filter.sharpen(1.5, 0.8) };
+		int[] src = new int[WIDTH * HEIGHT];
+		java.util.Arrays.fill(src, 0xFF3A7FC4);
+		for (Filter filter : filters) {
+			int[] dst = new int[src.length];
+			filter.apply(src, WIDTH, HEIGHT, dst);
+			assertArrayEquals(src, dst);
+		}
+
+		int[] edges = new int[src.length];
+		Filter.edges().apply(src, WIDTH, HEIGHT, edges);
+		for (int rgb : edges)
+			assertEquals(0xFF000000, rgb);
+	}
+
+	@Test
+	public void testEdges() throws Exception {
+		// black left half, white right half
+		int[] src = new int[WIDTH * HEIGHT];
+		for (int i = 0; i < src.length; i++)
+			src[i] = i % WIDTH < WIDTH / 2 ? 0xFF000000 : 0xFFFFFFFF;
+		int[] dst = new int[src.length];
+		Filter.edges().apply(src, WIDTH, HEIGHT, dst);
+		for (int y = 0; y < HEIGHT; y++)
+			for (int x = 0; x < WIDTH; x++) {
+				boolean edge = x == WIDTH / 2 - 1 || x == WIDTH / 2;
+				assertEquals(edge ? 0xFFFFFFFF : 0xFF000000, dst[y * WIDTH + x]);
+			}
+	}
+
+	@Test
+	public void testBandsMatchWholeImage() throws Exception {
+		int[] src = randomImage(WIDTH, HEIGHT, 2);
+		Filter filter = Filter.gaussian(3);
+		int[] whole = new int[src.length];
+		filter.filterRows(src, WIDTH, WIDTH, HEIGHT, 0, HEIGHT, whole, 0);
+		int[] banded = new int[src.length];
+		filter.apply(src, WIDTH, HEIGHT, banded);
+		assertArrayEquals(whole, banded);
+	}
+
+	@Test
+	public void testFilteredBlender() throws Exception {
+		BufferedImage img1 = image(randomImage(WIDTH, HEIGHT, 3));
+		BufferedImage img2 = image(randomImage(WIDTH, HEIGHT, 4));
+		Filter filter1 = Filter.gaussian(1.5), filter2 = Filter.edges();
+
+		// filter, then blend the filtered images
+		int[] filtered1 = new int[WIDTH * HEIGHT];
+		int[] filtered2 = new int[WIDTH * HEIGHT];
+		filter1.apply(image(img1), WIDTH, HEIGHT, filtered1);
+		filter2.apply(image(img2), WIDTH, HEIGHT, filtered2);
+		int[] expected = new int[WIDTH * HEIGHT];
+		BlenderSequential sequential = new BlenderSequential(
+				image(filtered1), image(filtered2), expected);
+		sequential.setMode(BlendMode.SCREEN);
+		sequential.setWeight(0.3);
+		sequential.run();
+
+		int[] actual = new int[WIDTH * HEIGHT];
+		FilteredBlender blender = new FilteredBlender(img1, img2, actual);
+		blender.setFilters(filter1, filter2);
+		blender.setMode(BlendMode.SCREEN);
+		blender.setWeight(0.3);
+		blender.run();
+		assertArrayEquals(expected, actual);
+	}
+
+	/**
+	 * Box blur of the given radius, summing the whole square per pixel.
+	 */
+	private static int[] direct(int[] src, int width, int height, int radius,
+			Border border) {
+		int[] dst = new int[src.length];
+		int n = (2 * radius + 1) * (2 * radius + 1);
+		for (int y = 0; y < height; y++)
+			for (int x = 0; x < width; x++) {
+				int r = 0, g = 0, b = 0;
+				for (int dy = -radius; dy <= radius; dy++)
+					for (int dx = -radius; dx <= radius; dx++) {
+						int rgb = src[border.index(y + dy, height) * width
+								+ border.index(x + dx, width)];
+						r += (rgb >> 16) & 255;
+						g += (rgb >> 8) & 255;
+						b += rgb & 255;
+					}
+				dst[y * width + x] = 0xFF000000
+						| (int) Math.round((double) r / n) << 16
+						| (int) Math.round((double) g / n) << 8
+						| (int) Math.round((double) b / n);
+			}
+		return dst;
+	}
+
+	private static void assertClose(int[] expected, int[] actual, int tolerance) {
+		for (int i = 0; i < expected.length; i++)
+			for (int shift = 0; shift < 24; shift += 8) {
+				int e = (expected[i] >> shift) & 255;
+				int a = (actual[i] >> shift) & 255;
+				assertTrue("pixel " + i + ": " + e + " != " + a,
+						Math.abs(e - a) <= tolerance);
+			}
+	}
+
+	private static int[] randomImage(int width, int height, long seed) {
+		Random random = new Random(seed);
+		int[] pixels = new int[width * height];
+		for (int i = 0; i < pixels.length; i++)
+			pixels[i] = 0xFF000000 | random.nextInt(1 << 24);
+		return pixels;
+	}
+
+	private static BufferedImage image(int[] pixels) {
+		BufferedImage img = new BufferedImage(WIDTH, HEIGHT,
+				BufferedImage.TYPE_INT_RGB);
+		img.setRGB(0, 0, WIDTH, HEIGHT, pixels, 0, WIDTH);
+		return img;
+	}
+
+	private static int[] image(BufferedImage img) {
+		return img.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH);
+	}
+}
@@ -0,0 +1,93 @@
+package montecarlo;
+
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.ToDoubleFunction;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link MonteCarloIntegrator} on integrals with known values. Each
+ * test reports the throughput in samples per second per core.
+ */
+
+public class MonteCarloIntegratorTest {
+	private static final long SAMPLES = 20000000;
+
+	@Test
+	public void testPolynomial() throws Exception {
+		// integral of x^2 over [0, 3) is 9
+		MonteCarloIntegrator integrator = new MonteCarloIntegrator(
+				new DoubleUnaryOperator() {
+					@Override
+					public double applyAsDouble(double x) {
+						return x * x;
+					}
+				}, 0, 3);
+		test("x^2 over [0, 3)", integrator, 9);
+	}
+
+	@Test
+	public void testGaussian() throws Exception {
+		// integral of exp(-|x|^2) over [-4, 4)^4 is pi^2
+		final int dimension = 4;
+		double[] lower = new double[dimension];
+		double[] upper = new double[dimension];
+		for (int i = 0; i < dimension; i++) {
+			lower[i] = -4;
+			upper[i] = 4;
+		}
+		MonteCarloIntegrator integrator = new MonteCarloIntegrator(
+				new ToDoubleFunction<double[]>() {
+					@Override
+					public double applyAsDouble(double[] point) {
+						double lenght = 0;
+						for (int i = 0; i < dimension; i++)
+							lenght += point[i] * point[i];
+						return Math.exp(-lenght);
+					}
+				}, new Box(lower, upper));
+		test("exp(-|x|^2) over [-4, 4)^4", integrator, Math.PI * Math.PI);
+	}
+
+	@Test(timeout = 10000)
+	public void testFailingIntegrand() throws Exception {
+		final IllegalStateException failure = new IllegalStateException();
+		MonteCarloIntegrator integrator = new MonteCarloIntegrator(
+				new DoubleUnaryOperator() {
+					@Override
+					public double applyAsDouble(double x) {
+						if (x > 0.5)
+							throw failure;
+						return x;
+					}
+				}, 0, 1);
+		try {
+			integrator.integrate(SAMPLES);
+			Assert.fail("the failure of the integrand was swallowed");
+		} catch (IllegalStateException e) {
+			Assert.assertSame(failure, e);
+		}
+		Assert.assertTrue(integrator.samples() < SAMPLES);
+	}
+
+	private void test(String integral, MonteCarloIntegrator integrator,
+			double expected) throws Exception {
+		System.out.println(integral);
+		System.out.println("-----------------------------");
+
+		// warm-up
+		integrator.integrate(SAMPLES);
+
+		double value = integrator.integrate(SAMPLES);
+		double standardError = integrator.standardError();
+		System.out.println("Expected: " + expected);
+		System.out.println("Estimated: " + value + " +/- " + standardError);
+		System.out.printf("Throughput: %.0f samples/s/core\n\n",
+				integrator.samplesPerSecondPerCore());
+
+		Assert.assertEquals(SAMPLES, integrator.samples());
+		Assert.assertEquals(expected, value, 6 * standardError);
+	}
+}
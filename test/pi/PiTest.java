@@ -1,9 +1,21 @@
 package pi;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import junit.framework.Assert;
+import pi.distributed.PiCoordinator;
+import pi.distributed.PiCoordinator.ProgressListener;
+import pi.distributed.PiWorker;
 
 import org.junit.Test;
 
@@ -33,6 +45,173 @@ public class PiTest {
 		test("Threads version", new PiThreads());
 	}
 
+	@Test
+	public void testBatch() throws Exception {
+		test("Batch kernel version", new PiBatch());
+	}
+
+	@Test
+	public void testForkJoin() throws Exception {
+		test("ForkJoin version", new PiForkJoin());
+	}
+
+	@Test
+	public void testVarianceReduction() throws Exception {
+		System.out.println("Variance reduction at the accuracy of "
+				+ ITERATIONS + " plain samples");
+		System.out.println("-----------------------------");
+
+		PiThreads threads = new PiThreads();
+		warmup(threads);
+		StopWatch.start();
+		threads.computePi(ITERATIONS);
+		StopWatch.stop();
+		long threadsRuntime = StopWatch.getRuntime();
+		System.out.println("Threads version: " + threadsRuntime + "ms");
+
+		PiForkJoin plain = new PiForkJoin(SamplingStrategy.PLAIN);
+		warmup(plain);
+		double plainVariance = plain.moments().variance();
+
+		for (SamplingStrategy strategy : SamplingStrategy.values()) {
+			PiForkJoin piApproximation = new PiForkJoin(strategy);
+			warmup(piApproximation);
+			// the number of samples giving the plain standard error
+			long samples = (long) Math.ceil(ITERATIONS
+					* piApproximation.moments().variance() / plainVariance);
+
+			StopWatch.start();
+			double pi = piApproximation.computePi(samples);
+			StopWatch.stop();
+
+			SampleMoments moments = piApproximation.moments();
+			System.out.printf(
+					"%-16s variance %.4f, %9d samples, %4dms (%.2fx Threads), "
+							+ "pi %.8f +/- %.8f\n", strategy,
+					moments.variance(), moments.samples(),
+					StopWatch.getRuntime(), threadsRuntime / 1.0
+							/ Math.max(1, StopWatch.getRuntime()), pi,
+					moments.standardError());
+			Assert.assertEquals(PI, pi, 0.001);
+		}
+		System.out.println();
+	}
+
+	@Test
+	public void testIntegration() throws Exception {
+		PiIntegration piApproximation = new PiIntegration();
+		test("Integration engine version", piApproximation);
+		System.out.printf("Throughput: %.0f samples/s/core\n\n",
+				piApproximation.integrator().samplesPerSecondPerCore());
+	}
+
+	@Test
+	public void testDistributed() throws Exception {
+		test("Distributed version (2 processes)", new PiCoordinator(2));
+	}
+
+	@Test
+	public void testDistributedWorkerFailure() throws Exception {
+		System.out.println("Distributed version with a failing worker");
+		System.out.println("-----------------------------");
+
+		long seed = 42;
+		double expected = new PiCoordinator(2, seed).computePi(ITERATIONS);
+
+		final PiCoordinator piApproximation = new PiCoordinator(2, seed);
+		final AtomicBoolean killed = new AtomicBoolean();
+		piApproximation.setProgressListener(new ProgressListener() {
+			@Override
+			public void progress(Process worker, int stream, long inside,
+					long total) {
+				// kill the first worker that reports, in the middle of its
+				// substream
+				if (killed.compareAndSet(false, true)) {
+					worker.destroyForcibly();
+					System.out.println("Killed a worker, live value: "
+							+ piApproximation.liveValue());
+				}
+			}
+		});
+		double pi = piApproximation.computePi(ITERATIONS);
+
+		System.out.println("Without failure: " + expected);
+		System.out.println("   With failure: " + pi);
+		Assert.assertTrue(killed.get());
+		Assert.assertTrue(piApproximation.failedStreams() >= 1);
+		// the substreams of the killed worker are recomputed identically
+		Assert.assertEquals(expected, pi, 0.0);
+		System.out.println();
+	}
+
+	@Test
+	public void testDistributedListenerFailure() throws Exception {
+		long seed = 42;
+		double expected = new PiCoordinator(2, seed).computePi(ITERATIONS);
+
+		PiCoordinator piApproximation = new PiCoordinator(2, seed);
+		piApproximation.setDeadline(60000);
+		final AtomicBoolean thrown = new AtomicBoolean();
+		piApproximation.setProgressListener(new ProgressListener() {
+			@Override
+			public void progress(Process worker, int stream, long inside,
+					long total) {
+				if (thrown.compareAndSet(false, true))
+					throw new IllegalStateException("failing listener");
+			}
+		});
+		double pi = piApproximation.computePi(ITERATIONS);
+
+		Assert.assertTrue(thrown.get());
+		Assert.assertTrue(piApproximation.failedStreams() >= 1);
+		Assert.assertEquals(expected, pi, 0.0);
+	}
+
+	@Test
+	public void testDistributedClassPath() throws Exception {
+		long seed = 42;
+		double expected = new PiCoordinator(2, seed).computePi(ITERATIONS);
+
+		// only the classes the workers need
+		PiCoordinator piApproximation = new PiCoordinator(2, seed);
+		piApproximation.setClassPath(new File(PiWorker.class
+				.getProtectionDomain().getCodeSource().getLocation().toURI())
+				.getPath());
+		Assert.assertEquals(expected, piApproximation.computePi(ITERATIONS),
+				0.0);
+
+		// workers that cannot start are given up on
+		piApproximation = new PiCoordinator(2, seed);
+		piApproximation.setClassPath(new File("missing").getAbsolutePath());
+		try {
+			piApproximation.computePi(ITERATIONS);
+			Assert.fail("computed without workers");
+		} catch (IOException e) {
+			Assert.assertTrue(e.getMessage().contains("failed workers"));
+		}
+	}
+
+	@Test
+	public void testDistributedScaling() throws Exception {
+		System.out.println("Distributed throughput on "
+				+ Runtime.getRuntime().availableProcessors() + " cores");
+		System.out.println("-----------------------------");
+
+		double single = 0;
+		for (int processes = 1; processes <= 4; processes *= 2) {
+			PiCoordinator piApproximation = new PiCoordinator(processes);
+			double pi = piApproximation.computePi(ITERATIONS);
+			double throughput = piApproximation.samplesPerSecond();
+			if (processes == 1)
+				single = throughput;
+			System.out.printf("%d processes: %.0f samples/s (%.2fx)\n",
+					processes, throughput, throughput / single);
+			Assert.assertTrue(throughput > 0);
+			Assert.assertEquals(PI, pi, 0.001);
+		}
+		System.out.println();
+	}
+
 	@Test
 	public void testLive() throws Exception {
 		test("Live version", new PiLive());
@@ -48,6 +227,166 @@ public class PiTest {
 		test("Live with atomic version", new PiLiveAtomic());
 	}
 
+	@Test
+	public void testLiveStriped() throws Exception {
+		test("Live with striped counters version", new PiLiveStriped());
+	}
+
+	@Test
+	public void testLiveStream() throws Exception {
+		System.out.println("Live estimate stream");
+		System.out.println("-----------------------------");
+
+		PiLiveStriped piApproximation = new PiLiveStriped();
+		final List<LiveEstimate> estimates = new CopyOnWriteArrayList<LiveEstimate>();
+		final CountDownLatch completed = new CountDownLatch(1);
+		LiveEstimatePublisher publisher = new LiveEstimatePublisher(
+				piApproximation.counters(), 50, TimeUnit.MILLISECONDS);
+		publisher.subscribe(new Flow.Subscriber<LiveEstimate>() {
+			@Override
+			public void onSubscribe(Flow.Subscription subscription) {
+				subscription.request(Long.MAX_VALUE);
+			}
+
+			@Override
+			public void onNext(LiveEstimate estimate) {
+				System.out.println("Live estimate: " + estimate);
+				estimates.add(estimate);
+			}
+
+			@Override
+			public void onError(Throwable error) {
+				error.printStackTrace();
+			}
+
+			@Override
+			public void onComplete() {
+				completed.countDown();
+			}
+		});
+
+		double pi = piApproximation.computePi(ITERATIONS);
+		publisher.close();
+		Assert.assertTrue(completed.await(1, TimeUnit.SECONDS));
+
+		LiveEstimate last = estimates.get(estimates.size() - 1);
+		Assert.assertEquals(ITERATIONS, last.samples());
+		Assert.assertEquals(pi, last.estimate(), 1e-9);
+		Assert.assertTrue(last.standardError() > 0);
+		System.out.println();
+	}
+
+	@Test(timeout = 10000)
+	public void testLiveStreamSlowSubscriber() throws Exception {
+		LiveCounters counters = new LiveCounters(1);
+		LiveEstimatePublisher publisher = new LiveEstimatePublisher(counters,
+				5, TimeUnit.MILLISECONDS);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch fastEstimates = new CountDownLatch(5);
+		final CountDownLatch completed = new CountDownLatch(2);
+		// blocks in its first onNext until released
+		publisher.subscribe(new CountingSubscriber(completed) {
+			@Override
+			public void onNext(LiveEstimate estimate) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		publisher.subscribe(new CountingSubscriber(completed) {
+			@Override
+			public void onNext(LiveEstimate estimate) {
+				fastEstimates.countDown();
+			}
+		});
+
+		// the fast subscriber keeps receiving while the slow one is stuck
+		for (long total = 1000; fastEstimates.getCount() > 0; total += 1000) {
+			counters.publish(0, total / 2, total);
+			Thread.sleep(5);
+		}
+		release.countDown();
+		publisher.close();
+		publisher.close();
+		Assert.assertTrue(completed.await(1, TimeUnit.SECONDS));
+	}
+
+	@Test(timeout = 10000)
+	public void testLiveStreamFinalEstimateAwaitsDemand() throws Exception {
+		LiveCounters counters = new LiveCounters(1);
+		LiveEstimatePublisher publisher = new LiveEstimatePublisher(counters,
+				5, TimeUnit.MILLISECONDS);
+		final AtomicReference<Flow.Subscription> subscription = new AtomicReference<Flow.Subscription>();
+		final List<LiveEstimate> estimates = new CopyOnWriteArrayList<LiveEstimate>();
+		final CountDownLatch first = new CountDownLatch(1);
+		final CountDownLatch completed = new CountDownLatch(1);
+		publisher.subscribe(new Flow.Subscriber<LiveEstimate>() {
+			@Override
+			public void onSubscribe(Flow.Subscription s) {
+				subscription.set(s);
+				s.request(1);
+			}
+
+			@Override
+			public void onNext(LiveEstimate estimate) {
+				estimates.add(estimate);
+				first.countDown();
+			}
+
+			@Override
+			public void onError(Throwable error) {
+				error.printStackTrace();
+			}
+
+			@Override
+			public void onComplete() {
+				completed.countDown();
+			}
+		});
+
+		counters.publish(0, 10, 20);
+		first.await();
+		// no demand left when the final estimate is published
+		counters.publish(0, 30, 40);
+		publisher.close();
+		Assert.assertFalse(completed.await(100, TimeUnit.MILLISECONDS));
+
+		subscription.get().request(1);
+		Assert.assertTrue(completed.await(1, TimeUnit.SECONDS));
+		Assert.assertEquals(2, estimates.size());
+		Assert.assertEquals(40, estimates.get(1).samples());
+	}
+
+	/**
+	 * Requests every estimate and counts down <code>completed</code> when
+	 * complete.
+	 */
+	private static abstract class CountingSubscriber implements
+			Flow.Subscriber<LiveEstimate> {
+		private final CountDownLatch completed;
+
+		CountingSubscriber(CountDownLatch completed) {
+			this.completed = completed;
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			subscription.request(Long.MAX_VALUE);
+		}
+
+		@Override
+		public void onError(Throwable error) {
+			error.printStackTrace();
+		}
+
+		@Override
+		public void onComplete() {
+			completed.countDown();
+		}
+	}
+
 	protected void test(String version, final PiApproximation piApproximation)
 			throws Exception {
 